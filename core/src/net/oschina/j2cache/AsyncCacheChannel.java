@@ -0,0 +1,262 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * <p>异步的缓存操作接口，所有方法都返回 {@link CompletableFuture}</p>
+ * <p>一级缓存命中时直接在调用线程中返回已完成的结果，需要访问二级缓存的操作在独立的 I/O 线程池中执行，
+ * 不会阻塞调用线程（例如 Netty/WebFlux 的 event-loop 线程）</p>
+ * <p>写入和删除操作在调用线程中修改一级缓存，同一个缓存键的二级缓存操作按照调用顺序依次执行</p>
+ *
+ * @author Winter Lau(javayou@gmail.com)
+ */
+public class AsyncCacheChannel {
+
+	private final CacheChannel channel;
+	private final Executor executor;
+	//每个缓存键最后一个尚未完成的二级缓存写入或删除操作，后续操作在其完成后才执行
+	private final Map<String, CompletableFuture<Void>> pendings = new ConcurrentHashMap<>();
+
+	/**
+	 * 异步缓存接口构造
+	 * @param channel 同步的缓存操作接口
+	 * @param executor 执行二级缓存 I/O 操作的线程池
+	 */
+	public AsyncCacheChannel(CacheChannel channel, Executor executor) {
+		this.channel = channel;
+		this.executor = executor;
+	}
+
+	/**
+	 * 返回对应的同步缓存操作接口
+	 * @return CacheChannel
+	 */
+	public CacheChannel sync() {
+		return channel;
+	}
+
+	/**
+	 * 异步读取缓存
+	 * @param region Cache region name
+	 * @param key cache key
+	 * @return cache object future
+	 */
+	public CompletableFuture<CacheObject> getAsync(String region, String key) {
+		CacheObject obj = channel.region(region).level1Get(key, null);
+		if(obj != null)
+			return CompletableFuture.completedFuture(obj);
+		return CompletableFuture.supplyAsync(() -> channel.get(region, key), executor);
+	}
+
+	/**
+	 * 异步读取缓存，两级缓存都不存在时通过 loader 加载
+	 * @param region Cache region name
+	 * @param key cache key
+	 * @param loader data loader
+	 * @return cache object future
+	 * @see CacheChannel#get(String, String, Function)
+	 */
+	public CompletableFuture<CacheObject> getAsync(String region, String key, Function<String, Object> loader) {
+		CacheObject obj = channel.region(region).level1Get(key, loader);
+		if(obj != null)
+			return CompletableFuture.completedFuture(obj);
+		return CompletableFuture.supplyAsync(() -> channel.get(region, key, loader), executor);
+	}
+
+	/**
+	 * 异步批量读取缓存，一级缓存全部命中时直接返回，否则只在 I/O 线程中读取未命中的键
+	 * @param region Cache region name
+	 * @param keys cache keys
+	 * @return cache objects future
+	 */
+	public CompletableFuture<Map<String, CacheObject>> getAsync(String region, Collection<String> keys) {
+		Map<String, CacheObject> results = new HashMap<>();
+		List<String> level2Keys = level1Get(region, keys, results);
+		if(level2Keys.isEmpty())
+			return CompletableFuture.completedFuture(results);
+		return CompletableFuture.supplyAsync(() -> {
+			results.putAll(channel.get(region, level2Keys));
+			return results;
+		}, executor);
+	}
+
+	/**
+	 * 异步批量读取缓存，两级缓存都不存在的键通过 loader 加载
+	 * @param region Cache region name
+	 * @param keys cache keys
+	 * @param loader data loader
+	 * @return cache objects future
+	 * @see CacheChannel#get(String, Collection, Function)
+	 */
+	public CompletableFuture<Map<String, CacheObject>> getAsync(String region, Collection<String> keys, Function<Collection<String>, Map<String, Object>> loader) {
+		Map<String, CacheObject> results = new HashMap<>();
+		List<String> level2Keys = level1Get(region, keys, results);
+		if(level2Keys.isEmpty())
+			return CompletableFuture.completedFuture(results);
+		return CompletableFuture.supplyAsync(() -> {
+			results.putAll(channel.get(region, level2Keys, loader));
+			return results;
+		}, executor);
+	}
+
+	/**
+	 * 异步判断缓存是否存在
+	 * @param region Cache region name
+	 * @param key cache key
+	 * @return true if key exists
+	 */
+	public CompletableFuture<Boolean> existsAsync(String region, String key) {
+		Object value = channel.region(region).level1().get(key);
+		if(value != null && !CacheRegion.isExpiredNullObject(value))
+			return CompletableFuture.completedFuture(!(value instanceof NullObject));
+		return CompletableFuture.supplyAsync(() -> channel.exists(region, key), executor);
+	}
+
+	/**
+	 * 异步写入缓存
+	 * @param region Cache region name
+	 * @param key cache key
+	 * @param value cache value
+	 * @return future completed when data written to level 2 cache
+	 */
+	public CompletableFuture<Void> setAsync(String region, String key, Object value) {
+		return setAsync(region, key, value, 0);
+	}
+
+	/**
+	 * 异步写入带有效期的缓存
+	 * @param region Cache region name
+	 * @param key cache key
+	 * @param value cache value
+	 * @param timeToLiveInSeconds cache expired in second
+	 * @return future completed when data written to level 2 cache
+	 */
+	public CompletableFuture<Void> setAsync(String region, String key, Object value, long timeToLiveInSeconds) {
+		if(value == null)
+			return evictAsync(region, key);
+		//一级缓存在调用线程中写入，随后的读取可以立即命中
+		CacheRegion cache = channel.region(region);
+		cache.level1Set(key, value, timeToLiveInSeconds);
+		return submit(region, Collections.singleton(key), () -> cache.level2Set(key, value, timeToLiveInSeconds));
+	}
+
+	/**
+	 * 异步批量写入缓存
+	 * @param region Cache region name
+	 * @param elements cache elements
+	 * @return future completed when data written to level 2 cache
+	 */
+	public CompletableFuture<Void> setAsync(String region, Map<String, Object> elements) {
+		return setAsync(region, elements, 0);
+	}
+
+	/**
+	 * 异步批量写入带有效期的缓存
+	 * @param region Cache region name
+	 * @param elements cache elements
+	 * @param timeToLiveInSeconds cache expired in second
+	 * @return future completed when data written to level 2 cache
+	 */
+	public CompletableFuture<Void> setAsync(String region, Map<String, Object> elements, long timeToLiveInSeconds) {
+		CacheRegion cache = channel.region(region);
+		cache.level1Set(elements, timeToLiveInSeconds);
+		return submit(region, elements.keySet(), () -> cache.level2Set(elements, timeToLiveInSeconds));
+	}
+
+	/**
+	 * 异步删除缓存
+	 * @param region Cache region name
+	 * @param keys cache keys
+	 * @return future completed when data removed from level 2 cache
+	 */
+	public CompletableFuture<Void> evictAsync(String region, String...keys) {
+		CacheRegion cache = channel.region(region);
+		cache.level1Remove(keys);
+		return submit(region, Arrays.asList(keys), () -> cache.level2Remove(keys));
+	}
+
+	/**
+	 * 异步清除缓存区域
+	 * @param region Cache region name
+	 * @return future completed when region cleared
+	 */
+	public CompletableFuture<Void> clearAsync(String region) {
+		return CompletableFuture.runAsync(() -> channel.clear(region), executor);
+	}
+
+	/**
+	 * 在 I/O 线程池中执行二级缓存操作，等待这些缓存键之前提交的操作完成后才执行，保证同一个缓存键的操作顺序与调用顺序一致
+	 * @param region Cache region name
+	 * @param keys 操作涉及的缓存键
+	 * @param task 二级缓存操作
+	 * @return future completed when the task finished
+	 */
+	private CompletableFuture<Void> submit(String region, Collection<String> keys, Runnable task) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		List<String> ids = new ArrayList<>(keys.size());
+		List<CompletableFuture<Void>> previous = new ArrayList<>();
+		//多个缓存键的登记需要整体有序，否则两个批量操作可能互相等待
+		synchronized (pendings) {
+			for(String key : keys) {
+				String id = region + ':' + key;
+				ids.add(id);
+				CompletableFuture<Void> last = pendings.put(id, future);
+				if(last != null)
+					previous.add(last);
+			}
+		}
+		CompletableFuture<Void> ready = previous.isEmpty() ? CompletableFuture.completedFuture(null) :
+				CompletableFuture.allOf(previous.toArray(new CompletableFuture[0])).exceptionally(e -> null);
+		ready.thenRunAsync(task, executor).whenComplete((r, e) -> {
+			ids.forEach(id -> pendings.remove(id, future));
+			if(e != null)
+				future.completeExceptionally((e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e);
+			else
+				future.complete(null);
+		});
+		return future;
+	}
+
+	/**
+	 * 一级缓存中的空对象占位符表示数据不存在
+	 * @param value cached value
+	 * @return null if value is NullObject
+	 */
+	private static Object nullIfNullObject(Object value) {
+		return (value instanceof NullObject) ? null : value;
+	}
+
+	/**
+	 * 在调用线程中批量读取一级缓存，空对象占位符转换为 null
+	 * @param region Cache region name
+	 * @param keys cache keys
+	 * @param results 一级缓存命中的结果
+	 * @return 一级缓存未命中的键
+	 */
+	private List<String> level1Get(String region, Collection<String> keys, Map<String, CacheObject> results) {
+		List<String> level2Keys = channel.region(region).level1Get(keys, results);
+		results.values().forEach(obj -> obj.setValue(nullIfNullObject(obj.getValue())));
+		return level2Keys;
+	}
+
+}
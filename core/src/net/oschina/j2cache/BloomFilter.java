@@ -0,0 +1,386 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache;
+
+import net.oschina.j2cache.util.ConfigUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * <p>二级缓存键的布隆过滤器，缓存区域启用 j2cache.bloom_filter.[region] 后，写入二级缓存的缓存键都会加入过滤器</p>
+ * <p>读取二级缓存前先判断过滤器，过滤器中不存在的缓存键一定不在二级缓存中，可以直接跳过二级缓存的读取</p>
+ * <p>其他节点写入的缓存键通过写入后广播的清除命令加入本节点的过滤器（见 {@link ClusterPolicy#evict(String, String...)}），
+ * 过滤器在区域创建后由后台线程根据二级缓存中已有的缓存键初始化，初始化完成前不过滤；在清除整个区域时重置，
+ * 并可以定期根据二级缓存的缓存键重建</p>
+ * <p>广播丢失或者乱序可能使过滤器漏掉其他节点写入的缓存键，因此过滤器判断不存在的读取仍有 1% 会读取二级缓存，
+ * 读取到数据时将缓存键加入过滤器</p>
+ *
+ * @author Winter Lau(javayou@gmail.com)
+ */
+class BloomFilter {
+
+	private final static Logger log = LoggerFactory.getLogger(BloomFilter.class);
+
+	//过滤器判断不存在时仍然读取二级缓存的比例
+	private final static double PROBE_RATE = 0.01;
+	//重建时等待正在进行的二级缓存写入完成的时间，之后开始读取二级缓存的缓存键
+	private final static long REBUILD_GRACE_MILLIS = 1000;
+
+	//所有区域共用的初始化和重建线程
+	private final static ScheduledExecutorService loader = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "j2cache-bloom-filter");
+		t.setDaemon(true);
+		return t;
+	});
+
+	//各区域的布隆过滤器，用于处理其他节点的广播命令
+	private final static ConcurrentHashMap<String, BloomFilter> filters = new ConcurrentHashMap<>();
+
+	private final Config config;
+	private final int numBits;
+	private final int numHashes;
+	private volatile AtomicLongArray bits;
+	//重建过程中新的位数组，重建期间写入的缓存键同时加入两个位数组
+	private AtomicLongArray rebuilding;
+	//写入缓存键时持有读锁，清除和切换位数组时持有写锁，避免丢失并发写入的缓存键
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	//初始化以及定期重建的任务，关闭时取消
+	private volatile Future<?> loading;
+	private volatile ScheduledFuture<?> rebuildTask;
+	//初始化完成前不过滤任何缓存键
+	private volatile boolean loaded;
+
+	private final LongAdder insertions = new LongAdder();
+	private final LongAdder lookups = new LongAdder();
+	private final LongAdder skips = new LongAdder();
+	private final LongAdder probes = new LongAdder();
+	private final LongAdder falsePositives = new LongAdder();
+	private final LongAdder falseNegatives = new LongAdder();
+
+	BloomFilter(Config config) {
+		this.config = config;
+		long bits = (long)(-config.expectedInsertions * Math.log(config.fpp) / (Math.log(2) * Math.log(2)));
+		this.numBits = (int)Math.max(64, Math.min(bits, Integer.MAX_VALUE - 63));
+		this.numHashes = Math.max(1, (int)Math.round((double)numBits / config.expectedInsertions * Math.log(2)));
+		this.bits = new AtomicLongArray((numBits + 63) >>> 6);
+	}
+
+	/**
+	 * 在后台使用二级缓存的缓存键初始化过滤器，配置了重建间隔时定期重建
+	 * @param keys level 2 cache keys supplier
+	 */
+	void load(Supplier<Stream<String>> keys) {
+		loading = loader.submit(() -> rebuild(keys));
+		if(config.rebuild > 0)
+			rebuildTask = loader.scheduleWithFixedDelay(() -> rebuild(keys), config.rebuild, config.rebuild, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * 停止尚未开始的初始化以及定期重建
+	 */
+	void close() {
+		Future<?> loading = this.loading;
+		if(loading != null)
+			loading.cancel(false);
+		ScheduledFuture<?> rebuildTask = this.rebuildTask;
+		if(rebuildTask != null)
+			rebuildTask.cancel(false);
+	}
+
+	/**
+	 * 使用二级缓存的缓存键重建位数组，重建期间被清除时放弃本次重建
+	 * 初始化时保留已经写入的缓存键；定期重建时先等待已经加入过滤器但尚未写入二级缓存的数据完成写入
+	 */
+	private void rebuild(Supplier<Stream<String>> keys) {
+		AtomicLongArray target = new AtomicLongArray(bits.length());
+		boolean initial = !loaded;
+		lock.writeLock().lock();
+		try {
+			rebuilding = target;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		if(!initial) {
+			try {
+				Thread.sleep(REBUILD_GRACE_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		long count = 0;
+		try (Stream<String> stream = keys.get()) {
+			for(Iterator<String> it = stream.iterator(); it.hasNext(); count++)
+				set(target, it.next());
+		} catch (RuntimeException e) {
+			log.warn("Failed to load level 2 cache keys, bloom filter is not rebuilt.", e);
+			count = -1;
+		}
+		lock.writeLock().lock();
+		try {
+			if(rebuilding != target)
+				return;
+			rebuilding = null;
+			if(count >= 0) {
+				if(initial) {
+					AtomicLongArray bits = this.bits;
+					for(int i = 0; i < bits.length(); i++)
+						target.set(i, target.get(i) | bits.get(i));
+				}
+				bits = target;
+				insertions.reset();
+				insertions.add(count);
+				loaded = true;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 注册区域的布隆过滤器
+	 * @param region region name
+	 * @param filter bloom filter
+	 */
+	static void register(String region, BloomFilter filter) {
+		filters.put(region, filter);
+	}
+
+	/**
+	 * 取消注册区域的布隆过滤器
+	 * @param region region name
+	 * @param filter bloom filter
+	 */
+	static void unregister(String region, BloomFilter filter) {
+		filters.remove(region, filter);
+	}
+
+	/**
+	 * 其他节点写入或者删除了缓存数据，将这些缓存键加入本节点的过滤器
+	 * @param region region name
+	 * @param keys cache keys
+	 */
+	static void onEvict(String region, String...keys) {
+		BloomFilter filter = filters.get(region);
+		if(filter != null)
+			filter.put(keys);
+	}
+
+	/**
+	 * 其他节点清除了整个缓存区域
+	 * @param region region name
+	 */
+	static void onClear(String region) {
+		BloomFilter filter = filters.get(region);
+		if(filter != null)
+			filter.clear();
+	}
+
+	/**
+	 * 将缓存键加入过滤器
+	 * @param keys cache keys
+	 */
+	void put(String...keys) {
+		for(String key : keys)
+			put(key);
+	}
+
+	void put(Collection<String> keys) {
+		keys.forEach(this::put);
+	}
+
+	void put(String key) {
+		lock.readLock().lock();
+		try {
+			set(bits, key);
+			if(rebuilding != null)
+				set(rebuilding, key);
+		} finally {
+			lock.readLock().unlock();
+		}
+		insertions.increment();
+	}
+
+	private void set(AtomicLongArray bits, String key) {
+		long hash64 = hash(key);
+		int hash1 = (int)hash64;
+		int hash2 = (int)(hash64 >>> 32);
+		for(int i = 1; i <= numHashes; i++) {
+			int combined = hash1 + i * hash2;
+			if(combined < 0)
+				combined = ~combined;
+			int index = combined % numBits;
+			long mask = 1L << index;
+			long word;
+			while(((word = bits.get(index >>> 6)) & mask) == 0 && !bits.compareAndSet(index >>> 6, word, word | mask));
+		}
+	}
+
+	/**
+	 * 判断缓存键是否可能存在
+	 * @param key cache key
+	 * @return false if the key is definitely not in level 2 cache
+	 */
+	boolean mightContain(String key) {
+		lookups.increment();
+		if(!loaded)
+			return true;
+		AtomicLongArray bits = this.bits;
+		long hash64 = hash(key);
+		int hash1 = (int)hash64;
+		int hash2 = (int)(hash64 >>> 32);
+		for(int i = 1; i <= numHashes; i++) {
+			int combined = hash1 + i * hash2;
+			if(combined < 0)
+				combined = ~combined;
+			int index = combined % numBits;
+			if((bits.get(index >>> 6) & (1L << index)) == 0) {
+				skips.increment();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 过滤器判断不存在时，是否仍然读取二级缓存以发现过滤器漏掉的缓存键
+	 * @return true if level 2 cache should be read
+	 */
+	boolean probe() {
+		if(ThreadLocalRandom.current().nextDouble() >= PROBE_RATE)
+			return false;
+		probes.increment();
+		return true;
+	}
+
+	/**
+	 * 过滤器判断不存在，但二级缓存中存在（广播丢失或者乱序），将缓存键加入过滤器
+	 * @param key cache key
+	 */
+	void falseNegative(String key) {
+		falseNegatives.increment();
+		put(key);
+	}
+
+	/**
+	 * 记录一次误判（过滤器判断存在，但二级缓存中不存在）
+	 */
+	void falsePositive() {
+		falsePositives.increment();
+	}
+
+	/**
+	 * 重置过滤器
+	 */
+	void clear() {
+		lock.writeLock().lock();
+		try {
+			AtomicLongArray bits = this.bits;
+			for(int i = 0; i < bits.length(); i++)
+				bits.set(i, 0);
+			rebuilding = null;
+			insertions.reset();
+			//二级缓存已经清空，过滤器不再需要初始化
+			loaded = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 过滤器的统计信息
+	 * @return statistics
+	 */
+	Map<String, Object> stats() {
+		long fp = falsePositives.sum();
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("bits", numBits);
+		stats.put("hashes", numHashes);
+		stats.put("expected_insertions", config.expectedInsertions);
+		stats.put("expected_fpp", config.fpp);
+		stats.put("loaded", loaded);
+		stats.put("insertions", insertions.sum());
+		stats.put("lookups", lookups.sum());
+		stats.put("skips", skips.sum());
+		stats.put("probes", probes.sum());
+		stats.put("false_positives", fp);
+		stats.put("false_negatives", falseNegatives.sum());
+		//误判率：二级缓存中不存在的缓存键中，被过滤器误判为存在的比例
+		stats.put("false_positive_rate", (fp + skips.sum() > 0) ? (double)fp / (fp + skips.sum()) : 0d);
+		return stats;
+	}
+
+	/**
+	 * 64 位 FNV-1a 哈希，再经过 murmur3 的 fmix64 混淆
+	 */
+	private static long hash(String key) {
+		long h = 0xcbf29ce484222325L;
+		for(byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			h ^= b;
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * 布隆过滤器配置
+	 */
+	static class Config {
+
+		private long expectedInsertions;
+		private double fpp = 0.01;
+		private long rebuild;
+
+		/**
+		 * 配置格式: expected_insertions[, fpp[, rebuild interval]]，例如 1000000, 0.01, 1h
+		 * rebuild interval -> 定期使用二级缓存的缓存键重建过滤器的间隔，不配置时不重建
+		 * @param cfg config value
+		 * @return bloom filter config
+		 */
+		static Config parse(String cfg) {
+			Config config = new Config();
+			String[] cfgs = cfg.split(",");
+			config.expectedInsertions = Long.parseLong(cfgs[0].trim());
+			if(cfgs.length > 1)
+				config.fpp = Double.parseDouble(cfgs[1].trim());
+			if(cfgs.length > 2)
+				config.rebuild = ConfigUtils.parseSeconds(cfgs[2]);
+			if(config.expectedInsertions <= 0 || config.fpp <= 0 || config.fpp >= 1)
+				throw new CacheException("Illegal bloom filter config: " + cfg);
+			return config;
+		}
+	}
+}
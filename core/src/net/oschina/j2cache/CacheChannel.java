@@ -17,8 +17,13 @@ package net.oschina.j2cache;
 
 import java.io.Closeable;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Cache Channel, the J2Cache methods explored to developers
@@ -27,6 +32,23 @@ import java.util.stream.Collectors;
  */
 public abstract class CacheChannel implements Closeable , AutoCloseable {
 
+	//已经创建的缓存区域操作接口
+	private final ConcurrentHashMap<String, CacheRegion> regions = new ConcurrentHashMap<>();
+	//j2cache 配置信息，用于创建缓存区域时读取区域配置
+	private final Properties props;
+
+	public CacheChannel() {
+		this(new Properties());
+	}
+
+	/**
+	 * 缓存接口构造
+	 * @param props j2cache 配置信息
+	 */
+	public CacheChannel(Properties props) {
+		this.props = props;
+	}
+
 	/**
 	 * <p>Just for Inner Use.</p>
 	 *
@@ -46,6 +68,18 @@ public abstract class CacheChannel implements Closeable , AutoCloseable {
 	 */
 	protected abstract void sendEvictCmd(String region, String...keys);
 
+	/**
+	 * 获取缓存区域的操作接口，该接口绑定了区域的一、二级缓存实例，频繁操作同一区域时可避免重复查找缓存实例
+	 * @param region Cache region name
+	 * @return cache region
+	 */
+	public CacheRegion region(String region) {
+		CacheRegion cacheRegion = regions.get(region);
+		if(cacheRegion == null)
+			cacheRegion = regions.computeIfAbsent(region, r -> new CacheRegion(this, r, props));
+		return cacheRegion;
+	}
+
 	/**
 	 * 读取缓存（用户无需判断返回的对象是否为空）
 	 * @param region
@@ -53,15 +87,27 @@ public abstract class CacheChannel implements Closeable , AutoCloseable {
 	 * @return
 	 */
 	public CacheObject get(String region, String key)  {
-		CacheObject obj = new CacheObject(region, key, CacheObject.LEVEL_1);
-		obj.setValue(CacheProviderHolder.getLevel1Cache(region).get(key));
-		if(obj.getValue() == null) {
-			obj.setLevel(CacheObject.LEVEL_2);
-			obj.setValue(CacheProviderHolder.getLevel2Cache(region).get(key));
-			if(obj.getValue() != null)
-				CacheProviderHolder.getLevel1Cache(region).put(key, obj.getValue());
-		}
-		return obj;
+		return region(region).get(key);
+	}
+
+	/**
+	 * 直接读取缓存数据，不创建 {@link CacheObject} 包装对象，适用于调用频繁且只需要缓存数据的场景
+	 * @param region Cache region name
+	 * @param key cache key
+	 * @return cached value or null
+	 */
+	public Object getValue(String region, String key)  {
+		return region(region).getValue(key);
+	}
+
+	/**
+	 * 批量读取缓存数据并填充到调用者提供的 Map 中，不存在的键不会写入 results
+	 * @param region Cache region name
+	 * @param keys cache keys
+	 * @param results the map to receive cached values
+	 */
+	public void getValues(String region, Collection<String> keys, Map<String, Object> results)  {
+		region(region).getValues(keys, results);
 	}
 
 	/**
@@ -71,7 +117,44 @@ public abstract class CacheChannel implements Closeable , AutoCloseable {
 	 * @return cache object
 	 */
 	public Map<String, CacheObject> get(String region, Collection<String> keys)  {
-		return keys.stream().collect(Collectors.toMap(Function.identity(), key -> get(region, key)));
+		return region(region).get(keys);
+	}
+
+	/**
+	 * 读取缓存，如果两级缓存中都不存在，则调用 loader 加载数据并写入缓存
+	 * 同一个 JVM 中对同一个缓存键的并发加载只会执行一次 loader，其他线程等待加载结果
+	 * 如果该区域启用了空对象缓存，loader 返回 null 时将缓存空对象占位符，在占位符失效前不会再次调用 loader
+	 * @param region Cache region name
+	 * @param key cache key
+	 * @param loader data loader, return null if data not exists
+	 * @return cache object
+	 */
+	public CacheObject get(String region, String key, Function<String, Object> loader)  {
+		return region(region).get(key, loader);
+	}
+
+	/**
+	 * 批量读取缓存，两级缓存中都不存在的键通过 loader 一次性加载并写入缓存
+	 * 同一个 JVM 中正在被其他线程加载的键不会重复加载，而是等待其加载结果
+	 * 如果该区域启用了空对象缓存，loader 没有返回的键将缓存空对象占位符
+	 * @param region Cache region name
+	 * @param keys cache keys
+	 * @param loader data loader, the key not in result map means data not exists
+	 * @return cache objects
+	 */
+	public Map<String, CacheObject> get(String region, Collection<String> keys, Function<Collection<String>, Map<String, Object>> loader)  {
+		return region(region).get(keys, loader);
+	}
+
+	/**
+	 * <p>为缓存区域注册数据加载器，用于一级缓存的自动刷新（例如 caffeine.region.Users = 10000, 1h, 50m）</p>
+	 * <p>数据写入超过刷新时间后，读取时会立即返回当前数据，同时通过加载器异步重新加载一次，
+	 * 重新加载的数据会同步写入二级缓存，加载器返回 null 表示数据已不存在，将同时从两级缓存中删除</p>
+	 * @param region Cache region name
+	 * @param loader data loader
+	 */
+	public void setLoader(String region, Function<String, Object> loader) {
+		region(region).setLoader(loader);
 	}
 
 	/**
@@ -81,10 +164,7 @@ public abstract class CacheChannel implements Closeable , AutoCloseable {
 	 * @return true if key exists
 	 */
 	public boolean exists(String region, String key) {
-		boolean exists = CacheProviderHolder.getLevel1Cache(region).exists(key);
-		if(!exists)
-			exists = CacheProviderHolder.getLevel2Cache(region).exists(key);
-		return exists;
+		return region(region).exists(key);
 	}
 
 	/**
@@ -95,14 +175,8 @@ public abstract class CacheChannel implements Closeable , AutoCloseable {
 	 * @param value: Cache value
 	 */
 	public void set(String region, String key, Object value)  {
-		if(value == null)
-			evict(region, key);
-		else{
-			CacheProviderHolder.getLevel1Cache(region).put(key, value);
-			CacheProviderHolder.getLevel2Cache(region).put(key, value);
-			this.sendEvictCmd(region, key);//清除原有的一级缓存的内容
-		}
-    }
+		region(region).set(key, value);
+	}
 
 	/**
 	 * Write data to j2cache with expired setting
@@ -111,18 +185,8 @@ public abstract class CacheChannel implements Closeable , AutoCloseable {
 	 * @param value Cache value
 	 * @param timeToLiveInSeconds cache expired in second
 	 */
-    public void set(String region, String key, Object value, long timeToLiveInSeconds)  {
-    	if(timeToLiveInSeconds <= 0)
-    		set(region, key, value);
-    	else {
-			if (value == null)
-				evict(region, key);
-			else {
-				CacheProviderHolder.getLevel1Cache(region, timeToLiveInSeconds).put(key, value);
-				CacheProviderHolder.getLevel2Cache(region).put(key, value);
-				this.sendEvictCmd(region, key);//清除原有的一级缓存的内容
-			}
-		}
+	public void set(String region, String key, Object value, long timeToLiveInSeconds)  {
+		region(region).set(key, value, timeToLiveInSeconds);
 	}
 
 	/**
@@ -131,10 +195,7 @@ public abstract class CacheChannel implements Closeable , AutoCloseable {
 	 * @param elements Cache Elements
 	 */
 	public void set(String region, Map<String, Object> elements)  {
-		CacheProviderHolder.getLevel1Cache(region).put(elements);
-		CacheProviderHolder.getLevel2Cache(region).put(elements);
-		//广播
-		this.sendEvictCmd(region, elements.keySet().stream().toArray(String[]::new));
+		region(region).set(elements);
 	}
 
 	/**
@@ -144,14 +205,7 @@ public abstract class CacheChannel implements Closeable , AutoCloseable {
 	 * @param timeToLiveInSeconds cache expired in second
 	 */
 	public void set(String region, Map<String, Object> elements, long timeToLiveInSeconds)  {
-		if(timeToLiveInSeconds <= 0)
-			set(region, elements);
-		else {
-			CacheProviderHolder.getLevel1Cache(region, timeToLiveInSeconds).put(elements);
-			CacheProviderHolder.getLevel2Cache(region).put(elements);
-			//广播
-			this.sendEvictCmd(region, elements.keySet().stream().toArray(String[]::new));
-		}
+		region(region).set(elements, timeToLiveInSeconds);
 	}
 
 	/**
@@ -161,10 +215,8 @@ public abstract class CacheChannel implements Closeable , AutoCloseable {
 	 * @param keys: Cache key
 	 */
 	public void evict(String region, String...keys)  {
-        CacheProviderHolder.getLevel1Cache(region).evict(keys);
-        CacheProviderHolder.getLevel2Cache(region).evict(keys);
-        this.sendEvictCmd(region, keys); //发送广播
-    }
+		region(region).evict(keys);
+	}
 
 	/**
 	 * Clear the cache
@@ -172,11 +224,20 @@ public abstract class CacheChannel implements Closeable , AutoCloseable {
 	 * @param region: Cache region name
 	 */
 	public void clear(String region)  {
-        CacheProviderHolder.getLevel1Cache(region).clear();
-		CacheProviderHolder.getLevel2Cache(region).clear();
-		this.sendClearCmd(region);
-    }
-	
+		region(region).clear();
+	}
+
+	/**
+	 * <p>Clear the cache in background</p>
+	 * <p>Redis generic 模式下分批删除缓存数据，不会阻塞 Redis；清除完成前仍然可能读取到旧的缓存数据</p>
+	 *
+	 * @param region: Cache region name
+	 * @return future completed when the region is cleared
+	 */
+	public CompletableFuture<Void> clearAsync(String region) {
+		return region(region).clearAsync();
+	}
+
 	/**
 	 * <p>Get cache region keys</p>
 	 * <p><strong>Notice: ehcache3 not support keys</strong></p>
@@ -185,11 +246,134 @@ public abstract class CacheChannel implements Closeable , AutoCloseable {
 	 * @return key list
 	 */
 	public Collection<String> keys(String region)  {
-		Set<String> keys = new HashSet<>();
-		keys.addAll(CacheProviderHolder.getLevel1Cache(region).keys());
-		keys.addAll(CacheProviderHolder.getLevel2Cache(region).keys());
-		return keys;
-    }
+		return region(region).keys();
+	}
+
+	/**
+	 * <p>以流的方式遍历缓存区域的缓存键，Redis 二级缓存使用 SCAN/HSCAN 分批读取，适用于缓存键很多的区域</p>
+	 * <p>遍历期间变化的缓存键可能被遗漏或者重复返回，使用完毕后应关闭返回的流</p>
+	 *
+	 * @param region: Cache region name
+	 * @return key stream
+	 */
+	public Stream<String> scanKeys(String region) {
+		return region(region).scanKeys();
+	}
+
+	/**
+	 * 返回缓存区域当前的热点缓存键及其估算的访问频率，按照访问频率从高到低排序
+	 * @param region Cache region name
+	 * @return key-frequency map, empty if j2cache.hot_keys.[region] not configured
+	 */
+	public Map<String, Integer> hotKeys(String region) {
+		return region(region).hotKeys();
+	}
+
+	/**
+	 * 返回缓存区域布隆过滤器的统计信息
+	 * @param region Cache region name
+	 * @return statistics, empty if j2cache.bloom_filter.[region] not configured
+	 */
+	public Map<String, Object> bloomFilterStats(String region) {
+		return region(region).bloomFilterStats();
+	}
+
+	/**
+	 * 返回缓存区域一级缓存数据当前占用的字节数
+	 * @param region Cache region name
+	 * @return weighted size in bytes, -1 if the region is not limited by bytes
+	 */
+	public long weightedSize(String region) {
+		return region(region).weightedSize();
+	}
+
+	/**
+	 * <p>累加计数器，增量先在本节点累加，定时通过 INCRBY/HINCRBY 批量写入二级缓存</p>
+	 * <p>计数器以十进制字符串保存在二级缓存中，不经过一级缓存和序列化，不应与普通缓存数据使用相同的缓存键</p>
+	 *
+	 * @param region Cache region name
+	 * @param key counter key
+	 * @param delta delta
+	 */
+	public void incr(String region, String key, long delta) {
+		region(region).incr(key, delta);
+	}
+
+	/**
+	 * 递减计数器
+	 * @param region Cache region name
+	 * @param key counter key
+	 * @param delta delta
+	 */
+	public void decr(String region, String key, long delta) {
+		region(region).decr(key, delta);
+	}
+
+	/**
+	 * 读取计数器，返回二级缓存中的值加上本节点尚未写入的增量，其他节点的增量在定时写入后才可见
+	 * @param region Cache region name
+	 * @param key counter key
+	 * @return counter value, 0 if not exists
+	 */
+	public long getCounter(String region, String key) {
+		return region(region).getCounter(key);
+	}
+
+	/**
+	 * 将所有区域延迟写入队列中的数据和计数器的增量立即写入二级缓存
+	 */
+	public void flush() {
+		regions.values().forEach(CacheRegion::flush);
+	}
+
+	/**
+	 * 从快照文件加载所有配置了 j2cache.snapshot.[region] 的区域的一级缓存，应在提供服务前调用
+	 */
+	public void restoreSnapshots() {
+		props.stringPropertyNames().stream()
+				.filter(name -> name.startsWith(CacheRegion.PREFIX_SNAPSHOT))
+				.forEach(name -> region(name.substring(CacheRegion.PREFIX_SNAPSHOT.length())).restoreSnapshot());
+	}
+
+	/**
+	 * 从二级缓存预热所有配置了 j2cache.warmup.[region] 的区域的一级缓存，应在提供服务前调用
+	 * 使用 j2cache.warmup_threads 个线程并行读取二级缓存，默认为 CPU 核数
+	 */
+	public void warmup() {
+		List<String> names = props.stringPropertyNames().stream()
+				.filter(name -> name.startsWith(CacheRegion.PREFIX_WARMUP))
+				.collect(Collectors.toList());
+		if(names.isEmpty())
+			return;
+		int threads = Integer.parseInt(props.getProperty("j2cache.warmup_threads", String.valueOf(Runtime.getRuntime().availableProcessors())).trim());
+		ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "j2cache-warmup");
+			t.setDaemon(true);
+			return t;
+		});
+		try {
+			for(String name : names)
+				region(name.substring(CacheRegion.PREFIX_WARMUP.length())).warmup(props.getProperty(name).trim(), executor);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * 将配置了 j2cache.snapshot.[region] 的区域的一级缓存保存到快照文件
+	 */
+	public void saveSnapshots() {
+		regions.values().forEach(CacheRegion::saveSnapshot);
+	}
+
+	/**
+	 * 写入各区域延迟写入队列和计数器中剩余的数据并停止各区域的后台任务，关闭缓存时调用
+	 * 之后再次使用的区域将被重新创建
+	 */
+	protected void closeRegions() {
+		regions.values().forEach(CacheRegion::close);
+		regions.clear();
+	}
 
 	/**
 	 * Close J2Cache
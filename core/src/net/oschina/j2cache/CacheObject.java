@@ -23,6 +23,7 @@ public class CacheObject {
 
 	public final static byte LEVEL_1 = 1;
 	public final static byte LEVEL_2 = 2;
+	public final static byte LEVEL_OUTER = 3;	//数据由外部的 loader 加载
 
 	private String region;
 	private String key;
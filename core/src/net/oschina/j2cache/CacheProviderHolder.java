@@ -17,6 +17,7 @@ package net.oschina.j2cache;
 
 import net.oschina.j2cache.caffeine.CaffeineProvider;
 import net.oschina.j2cache.ehcache.EhCacheProvider3;
+import net.oschina.j2cache.offheap.OffHeapCacheProvider;
 import net.oschina.j2cache.redis.RedisClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -81,6 +82,8 @@ public class CacheProviderHolder {
 			return new EhCacheProvider3();
 		if("caffeine".equalsIgnoreCase(cacheIdent))
 			return new CaffeineProvider();
+		if("offheap".equalsIgnoreCase(cacheIdent))
+			return new OffHeapCacheProvider();
 		if("redis".equalsIgnoreCase(cacheIdent))
 			return new RedisCacheProvider();
 		if("none".equalsIgnoreCase(cacheIdent))
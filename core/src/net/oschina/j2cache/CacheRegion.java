@@ -0,0 +1,1228 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache;
+
+import net.oschina.j2cache.util.ConfigUtils;
+import net.oschina.j2cache.util.SerializationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * <p>缓存区域的操作接口，通过 {@link CacheChannel#region(String)} 获取</p>
+ * <p>创建时绑定该区域的一、二级缓存实例以及区域配置，避免每次操作都重新查找缓存实例</p>
+ *
+ * @author Winter Lau(javayou@gmail.com)
+ */
+public class CacheRegion {
+
+	private final static Logger log = LoggerFactory.getLogger(CacheRegion.class);
+
+	private final static String DEFAULT_REGION = "default";
+	private final static String PREFIX_NULL_OBJECT = "j2cache.null_object.";
+	private final static String PREFIX_WRITE_BEHIND = "j2cache.write_behind.";
+	private final static String PREFIX_EARLY_EXPIRE = "j2cache.early_expire.";
+	private final static String PREFIX_HOT_KEYS = "j2cache.hot_keys.";
+	private final static String PREFIX_BLOOM_FILTER = "j2cache.bloom_filter.";
+	private final static String PREFIX_DISK_TIER = "j2cache.disk_tier.";
+	final static String PREFIX_SNAPSHOT = "j2cache.snapshot.";
+	final static String PREFIX_WARMUP = "j2cache.warmup.";
+	private final static String PREFIX_COUNTER = "j2cache.counter.";
+
+	//尚未统计到数据加载耗时前使用的默认加载耗时（毫秒）
+	private final static long DEFAULT_LOAD_MILLIS = 100;
+	//预热时每批从二级缓存读取的数量
+	private final static int WARMUP_BATCH_SIZE = 500;
+	//预热时最多同时等待读取的批数，遍历缓存键的速度快于读取时暂停遍历，避免在内存中积压大量缓存键
+	private final static int WARMUP_PENDING_BATCHES = 16;
+	//提前刷新的线程数以及等待刷新的最大数量，超出时放弃刷新
+	private final static int REFRESH_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+	private final static int REFRESH_QUEUE_SIZE = 1024;
+
+	//所有区域共用的提前刷新以及一级缓存自动刷新的线程池，不占用 ForkJoinPool.commonPool
+	private final static ThreadPoolExecutor refresher;
+	static {
+		AtomicInteger seq = new AtomicInteger();
+		refresher = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(REFRESH_QUEUE_SIZE), r -> {
+			Thread t = new Thread(r, "j2cache-early-refresh-" + seq.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		refresher.allowCoreThreadTimeOut(true);
+	}
+
+	private final CacheChannel channel;
+	private final String name;
+	private final Level1Cache level1;
+	private final Level2Cache level2;
+	//一级缓存是否按照字节数限制容量
+	private final boolean weighted;
+	private final NullObjectConfig nullObjectConfig;
+	private final WriteBehind writeBehind;
+	private final double earlyExpireBeta;
+	private final HotKeys hotKeys;
+	private final BloomFilter bloomFilter;
+	private final DiskTier diskTier;
+	private final Snapshot snapshot;
+	private final long counterInterval;
+	//第一次使用计数器时创建
+	private volatile Counters counters;
+
+	//通过 setLoader 注册的数据加载器
+	private volatile Function<String, Object> loader;
+	//数据加载耗时的滑动平均值（纳秒），用于计算提前刷新的概率
+	private volatile long loadNanos;
+
+	//正在加载中的缓存数据，用于保证同一个 JVM 中对同一个缓存键只会有一个线程执行 loader
+	private final ConcurrentHashMap<String, CompletableFuture<Object>> loadings = new ConcurrentHashMap<>();
+
+	CacheRegion(CacheChannel channel, String name, Properties props) {
+		this.channel = channel;
+		this.name = name;
+		this.level1 = CacheProviderHolder.getLevel1Cache(name);
+		this.level2 = CacheProviderHolder.getLevel2Cache(name);
+		this.weighted = level1.weightedSize() >= 0;
+
+		String cfg = getConfig(props, PREFIX_NULL_OBJECT, true);
+		this.nullObjectConfig = (cfg != null) ? NullObjectConfig.parse(cfg) : null;
+		cfg = getConfig(props, PREFIX_WRITE_BEHIND, false);
+		this.writeBehind = (cfg != null) ? new WriteBehind(channel, name, level2, WriteBehind.Config.parse(cfg)) : null;
+		cfg = getConfig(props, PREFIX_EARLY_EXPIRE, true);
+		this.earlyExpireBeta = (cfg != null) ? Double.parseDouble(cfg) : 0;
+		cfg = getConfig(props, PREFIX_HOT_KEYS, true);
+		this.hotKeys = (cfg != null) ? new HotKeys(HotKeys.Config.parse(cfg)) : null;
+		cfg = getConfig(props, PREFIX_BLOOM_FILTER, false);
+		this.bloomFilter = (cfg != null) ? initBloomFilter(BloomFilter.Config.parse(cfg)) : null;
+		cfg = getConfig(props, PREFIX_DISK_TIER, false);
+		if(cfg != null) {
+			String path = props.getProperty("j2cache.disk_tier_path", DiskTier.defaultPath());
+			this.diskTier = new DiskTier(name, DiskTier.Config.parse(cfg), path);
+			DiskTier.register(name, diskTier);
+		}
+		else
+			this.diskTier = null;
+		cfg = getConfig(props, PREFIX_SNAPSHOT, false);
+		if(cfg != null) {
+			String path = props.getProperty("j2cache.snapshot_path", defaultSnapshotPath(props));
+			this.snapshot = new Snapshot(name, path, Integer.parseInt(cfg));
+		}
+		else
+			this.snapshot = null;
+		cfg = getConfig(props, PREFIX_COUNTER, true);
+		this.counterInterval = (cfg != null) ? Long.parseLong(cfg) : 100;
+	}
+
+	/**
+	 * 创建布隆过滤器，在后台使用二级缓存中已有的缓存键初始化，不阻塞区域的创建
+	 * 初始化完成前（或者二级缓存不支持读取所有缓存键时）过滤器不过滤任何缓存键
+	 * @param config bloom filter config
+	 * @return bloom filter
+	 */
+	private BloomFilter initBloomFilter(BloomFilter.Config config) {
+		BloomFilter filter = new BloomFilter(config);
+		BloomFilter.register(name, filter);
+		//延迟写入队列中的数据尚未写入二级缓存，同样加入过滤器
+		filter.load(() -> (writeBehind != null) ? Stream.concat(level2.scanKeys(), writeBehind.keys().stream()) : level2.scanKeys());
+		return filter;
+	}
+
+	/**
+	 * 读取该区域的配置项
+	 * @param props j2cache 配置信息
+	 * @param prefix 配置项前缀
+	 * @param useDefault 区域没有配置时是否使用 default 区域的配置
+	 * @return config value or null
+	 */
+	private String getConfig(Properties props, String prefix, boolean useDefault) {
+		String cfg = props.getProperty(prefix + name);
+		if(cfg == null && useDefault)
+			cfg = props.getProperty(prefix + DEFAULT_REGION);
+		return (cfg != null) ? cfg.trim() : null;
+	}
+
+	/**
+	 * 默认的快照目录，按照二级缓存的命名空间区分，同一台机器上使用不同命名空间的应用不会读写彼此的快照
+	 */
+	private static String defaultSnapshotPath(Properties props) {
+		String namespace = props.getProperty("redis.namespace");
+		if(namespace == null || namespace.trim().isEmpty())
+			namespace = "j2cache";
+		return System.getProperty("java.io.tmpdir") + File.separator + "j2cache" + File.separator + namespace.trim();
+	}
+
+	/**
+	 * 缓存区域名称
+	 * @return region name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	Level1Cache level1() {
+		return level1;
+	}
+
+	Level2Cache level2() {
+		return level2;
+	}
+
+	/**
+	 * 读取缓存（用户无需判断返回的对象是否为空）
+	 * @param key cache key
+	 * @return cache object
+	 */
+	public CacheObject get(String key)  {
+		CacheObject obj = getObject(key);
+		if(obj.getValue() instanceof NullObject)
+			obj.setValue(null);
+		else if(obj.getLevel() == CacheObject.LEVEL_1 && obj.getValue() != null)
+			refreshEarly(key, obj.getValue(), loader);
+		return obj;
+	}
+
+	/**
+	 * 直接读取缓存数据，不创建 {@link CacheObject} 包装对象，一级缓存命中时不产生额外的对象分配
+	 * @param key cache key
+	 * @return cached value or null
+	 */
+	public Object getValue(String key) {
+		boolean hot = recordAccess(key);
+		Object value = level1.get(key);
+		if(value != null) {
+			if(!(value instanceof NullObject)) {
+				pin(hot, key, value);
+				refreshEarly(key, value, loader);
+				return value;
+			}
+			if(!((NullObject)value).isExpired())
+				return null;
+			level1.evict(key);
+		}
+		value = level2Get(key);
+		if(value == null || isExpiredNullObject(value))
+			return null;
+		backfill(hot, key, value);
+		return (value instanceof NullObject) ? null : value;
+	}
+
+	/**
+	 * 批量读取缓存数据并填充到调用者提供的 Map 中，不创建 {@link CacheObject} 包装对象，不存在的键不会写入 results
+	 * 一级缓存未命中的键通过一次批量操作从二级缓存读取
+	 * @param keys cache keys
+	 * @param results the map to receive cached values
+	 */
+	public void getValues(Collection<String> keys, Map<String, Object> results) {
+		List<String> level2Keys = null;
+		for(String key : keys) {
+			boolean hot = recordAccess(key);
+			Object value = level1.get(key);
+			if(value != null && !isExpiredNullObject(value)) {
+				if(!(value instanceof NullObject)) {
+					pin(hot, key, value);
+					results.put(key, value);
+				}
+			}
+			else {
+				if(level2Keys == null)
+					level2Keys = new ArrayList<>();
+				level2Keys.add(key);
+			}
+		}
+		if(level2Keys == null)
+			return;
+		Map<String, Object> objs_level2 = level2Get(level2Keys);
+		objs_level2.values().removeIf(v -> v == null || isExpiredNullObject(v));
+		if(objs_level2.isEmpty())
+			return;
+		backfill(objs_level2);
+		objs_level2.forEach((key, value) -> {
+			if(!(value instanceof NullObject))
+				results.put(key, value);
+		});
+	}
+
+	/**
+	 * 读取缓存，返回的数据可能是空对象占位符 {@link NullObject}
+	 * @param key cache key
+	 * @return cache object
+	 */
+	private CacheObject getObject(String key) {
+		CacheObject obj = new CacheObject(name, key, CacheObject.LEVEL_1);
+		boolean hot = recordAccess(key);
+		Object value = level1.get(key);
+		if(isExpiredNullObject(value)) {
+			level1.evict(key);
+			value = null;
+		}
+		if(value == null) {
+			obj.setLevel(CacheObject.LEVEL_2);
+			value = level2Get(key);
+			if(isExpiredNullObject(value))
+				value = null;
+			if(value != null)
+				backfill(hot, key, value);
+		}
+		else
+			pin(hot, key, value);
+		obj.setValue(value);
+		return obj;
+	}
+
+	/**
+	 * 只读取一级缓存，命中时与 {@link #get(String)} 一样记录热点缓存键、延长热点缓存键的有效时间并概率性提前刷新，
+	 * 用于 {@link AsyncCacheChannel} 在调用线程中直接返回一级缓存的数据
+	 * @param key cache key
+	 * @param loader 提前刷新使用的 loader，为 null 时使用 setLoader 注册的加载器
+	 * @return 一级缓存未命中时返回 null
+	 */
+	CacheObject level1Get(String key, Function<String, Object> loader) {
+		boolean hot = recordAccess(key);
+		Object value = level1.get(key);
+		if(value == null || isExpiredNullObject(value))
+			return null;
+		if(value instanceof NullObject)
+			return new CacheObject(name, key, CacheObject.LEVEL_1, null);
+		pin(hot, key, value);
+		refreshEarly(key, value, (loader != null) ? loader : this.loader);
+		return new CacheObject(name, key, CacheObject.LEVEL_1, value);
+	}
+
+	/**
+	 * 批量读取一级缓存，记录热点缓存键并延长热点缓存键的有效时间，返回的数据可能是空对象占位符 {@link NullObject}
+	 * @param keys cache keys
+	 * @param results 一级缓存命中的结果
+	 * @return 一级缓存未命中的键
+	 */
+	List<String> level1Get(Collection<String> keys, Map<String, CacheObject> results) {
+		List<String> level2Keys = new ArrayList<>();
+		if(keys.isEmpty())
+			return level2Keys;
+		Map<String, Object> objs = level1.get(keys);
+		for(String key : keys) {
+			boolean hot = recordAccess(key);
+			Object value = objs.get(key);
+			if(value != null && !isExpiredNullObject(value)) {
+				pin(hot, key, value);
+				results.put(key, new CacheObject(name, key, CacheObject.LEVEL_1, value));
+			}
+			else
+				level2Keys.add(key);
+		}
+		return level2Keys;
+	}
+
+	/**
+	 * 批量读取缓存中的对象（用户无需判断返回的对象是否为空）
+	 * @param keys cache keys
+	 * @return cache object
+	 */
+	public Map<String, CacheObject> get(Collection<String> keys)  {
+		Map<String, CacheObject> results = getObjects(keys);
+		results.values().forEach(obj -> {
+			if(obj.getValue() instanceof NullObject)
+				obj.setValue(null);
+		});
+		return results;
+	}
+
+	/**
+	 * 批量读取缓存，返回的数据可能是空对象占位符 {@link NullObject}
+	 * @param keys cache keys
+	 * @return cache objects
+	 */
+	private Map<String, CacheObject> getObjects(Collection<String> keys) {
+		Map<String, CacheObject> results = new HashMap<>();
+		List<String> level2Keys = level1Get(keys, results);
+		if(level2Keys.isEmpty())
+			return results;
+		//只对一级缓存未命中的键批量读取二级缓存，并一次性回填一级缓存
+		Map<String, Object> objs_level2 = level2Get(level2Keys);
+		Map<String, Object> backfill = new HashMap<>();
+		for(String key : level2Keys) {
+			Object value = objs_level2.get(key);
+			if(isExpiredNullObject(value))
+				value = null;
+			results.put(key, new CacheObject(name, key, CacheObject.LEVEL_2, value));
+			if(value != null)
+				backfill.put(key, value);
+		}
+		if(!backfill.isEmpty())
+			backfill(backfill);
+		return results;
+	}
+
+	/**
+	 * 读取缓存，如果两级缓存中都不存在，则调用 loader 加载数据并写入缓存
+	 * 同一个 JVM 中对同一个缓存键的并发加载只会执行一次 loader，其他线程等待加载结果
+	 * 如果该区域启用了空对象缓存，loader 返回 null 时将缓存空对象占位符，在占位符失效前不会再次调用 loader
+	 * @param key cache key
+	 * @param loader data loader, return null if data not exists
+	 * @return cache object
+	 */
+	public CacheObject get(String key, Function<String, Object> loader)  {
+		CacheObject obj = getObject(key);
+		if(obj.getValue() instanceof NullObject)
+			obj.setValue(null);
+		else if(obj.getLevel() == CacheObject.LEVEL_1 && obj.getValue() != null)
+			refreshEarly(key, obj.getValue(), loader);
+		else if(obj.getValue() == null) {
+			CompletableFuture<Object> future = new CompletableFuture<>();
+			CompletableFuture<Object> loading = loadings.putIfAbsent(key, future);
+			if(loading != null)
+				obj.setValue(waitFor(loading));
+			else {
+				try {
+					//其他线程可能刚刚完成加载并写入了缓存
+					Object value = level1.get(key);
+					if(value == null || isExpiredNullObject(value)) {
+						value = load(key, loader);
+						if(value != null)
+							set(key, value);
+						else
+							setNullObjects(key);
+					}
+					else if(value instanceof NullObject)
+						value = null;
+					future.complete(value);
+					obj.setValue(value);
+				} catch (Throwable e) {
+					//Error 以及被隐式抛出的受检异常同样需要通知等待的线程，否则等待的线程会一直阻塞
+					future.completeExceptionally(e);
+					throw e;
+				} finally {
+					loadings.remove(key, future);
+				}
+			}
+			obj.setLevel(CacheObject.LEVEL_OUTER);
+		}
+		return obj;
+	}
+
+	/**
+	 * 批量读取缓存，两级缓存中都不存在的键通过 loader 一次性加载并写入缓存
+	 * 同一个 JVM 中正在被其他线程加载的键不会重复加载，而是等待其加载结果
+	 * 如果该区域启用了空对象缓存，loader 没有返回的键将缓存空对象占位符
+	 * @param keys cache keys
+	 * @param loader data loader, the key not in result map means data not exists
+	 * @return cache objects
+	 */
+	public Map<String, CacheObject> get(Collection<String> keys, Function<Collection<String>, Map<String, Object>> loader)  {
+		Map<String, CacheObject> results = getObjects(keys);
+		Map<String, CompletableFuture<Object>> owns = new HashMap<>();
+		Map<String, CompletableFuture<Object>> waits = new HashMap<>();
+		results.forEach((key, obj) -> {
+			if(obj.getValue() instanceof NullObject)
+				obj.setValue(null);
+			else if(obj.getValue() == null) {
+				CompletableFuture<Object> future = new CompletableFuture<>();
+				CompletableFuture<Object> loading = loadings.putIfAbsent(key, future);
+				if(loading == null)
+					owns.put(key, future);
+				else
+					waits.put(key, loading);
+			}
+		});
+
+		if(!owns.isEmpty()) {
+			try {
+				//其他线程可能刚刚完成加载并写入了缓存
+				Map<String, Object> values = new HashMap<>(level1.get(owns.keySet()));
+				values.values().removeIf(v -> v == null || isExpiredNullObject(v));
+				List<String> loadKeys = new ArrayList<>();
+				for(String key : owns.keySet())
+					if(!values.containsKey(key))
+						loadKeys.add(key);
+				if(!loadKeys.isEmpty()) {
+					Map<String, Object> loaded = new HashMap<>();
+					Map<String, Object> objs = loader.apply(loadKeys);
+					if(objs != null)
+						objs.forEach((k, v) -> {
+							if(v != null)
+								loaded.put(k, v);
+						});
+					if(!loaded.isEmpty()) {
+						set(loaded);
+						values.putAll(loaded);
+					}
+					loadKeys.removeAll(loaded.keySet());
+					setNullObjects(loadKeys.toArray(new String[loadKeys.size()]));
+				}
+				owns.forEach((key, future) -> {
+					Object value = values.get(key);
+					if(value instanceof NullObject)
+						value = null;
+					future.complete(value);
+					results.put(key, new CacheObject(name, key, CacheObject.LEVEL_OUTER, value));
+				});
+			} catch (Throwable e) {
+				owns.values().forEach(future -> future.completeExceptionally(e));
+				throw e;
+			} finally {
+				owns.forEach((key, future) -> loadings.remove(key, future));
+			}
+		}
+
+		waits.forEach((key, loading) -> results.put(key, new CacheObject(name, key, CacheObject.LEVEL_OUTER, waitFor(loading))));
+		return results;
+	}
+
+	/**
+	 * 记录缓存键的访问频率，仅对配置了 j2cache.hot_keys.[region] 的区域生效
+	 * @param key cache key
+	 * @return true if the key is hot
+	 */
+	private boolean recordAccess(String key) {
+		return hotKeys != null && hotKeys.increment(key);
+	}
+
+	/**
+	 * 一级缓存命中热点缓存键时，如果剩余有效时间不足热点失效时间的一半，则重新按照热点失效时间写入一级缓存
+	 * @param hot is hot key
+	 * @param key cache key
+	 * @param value cache value
+	 */
+	private void pin(boolean hot, String key, Object value) {
+		if(!hot || hotKeys.getPinTtl() <= 0 || value instanceof NullObject)
+			return;
+		long ttl = level1.ttl(key);
+		if(ttl >= 0 && ttl < hotKeys.getPinTtl() * 500)
+			level1.put(key, value, hotKeys.getPinTtl());
+	}
+
+	/**
+	 * 将二级缓存读取的数据回填一级缓存，热点缓存键使用热点失效时间
+	 * @param hot is hot key
+	 * @param key cache key
+	 * @param value cache value
+	 */
+	private void backfill(boolean hot, String key, Object value) {
+		if(hot && hotKeys.getPinTtl() > 0 && !(value instanceof NullObject))
+			level1.put(key, value, hotKeys.getPinTtl());
+		else
+			level1.put(key, value);
+	}
+
+	/**
+	 * 将二级缓存读取的数据批量回填一级缓存，热点缓存键使用热点失效时间
+	 * @param elements cache elements
+	 */
+	private void backfill(Map<String, Object> elements) {
+		if(hotKeys == null || hotKeys.getPinTtl() <= 0) {
+			level1.put(elements);
+			return;
+		}
+		Map<String, Object> hots = new HashMap<>();
+		Map<String, Object> others = new HashMap<>();
+		elements.forEach((k, v) -> {
+			if(hotKeys.isHot(k) && !(v instanceof NullObject))
+				hots.put(k, v);
+			else
+				others.put(k, v);
+		});
+		if(!hots.isEmpty())
+			level1.put(hots, hotKeys.getPinTtl());
+		if(!others.isEmpty())
+			level1.put(others);
+	}
+
+	/**
+	 * 返回当前的热点缓存键及其估算的访问频率，按照访问频率从高到低排序
+	 * 仅对配置了 j2cache.hot_keys.[region] 的区域有效，其他区域返回空
+	 * @return key-frequency map
+	 */
+	public Map<String, Integer> hotKeys() {
+		return (hotKeys != null) ? hotKeys.hotKeys() : Collections.emptyMap();
+	}
+
+	/**
+	 * 返回布隆过滤器的统计信息，包括插入数量、查询次数、跳过二级缓存读取的次数以及误判率
+	 * 仅对配置了 j2cache.bloom_filter.[region] 的区域有效，其他区域返回空
+	 * @return statistics
+	 */
+	public Map<String, Object> bloomFilterStats() {
+		return (bloomFilter != null) ? bloomFilter.stats() : Collections.emptyMap();
+	}
+
+	/**
+	 * 返回一级缓存数据当前占用的字节数，仅对按照字节数限制容量的区域有效（例如 caffeine.region.[region] = 64MB, 1h）
+	 * @return weighted size in bytes, -1 if not supported
+	 */
+	public long weightedSize() {
+		return level1.weightedSize();
+	}
+
+	/**
+	 * 调用 loader 加载数据，并统计加载耗时
+	 * @param key cache key
+	 * @param loader data loader
+	 * @return loaded value
+	 */
+	private Object load(String key, Function<String, Object> loader) {
+		long start = System.nanoTime();
+		Object value = loader.apply(key);
+		long nanos = System.nanoTime() - start;
+		long last = loadNanos;
+		loadNanos = (last == 0) ? nanos : (last * 4 + nanos) / 5;
+		return value;
+	}
+
+	/**
+	 * <p>概率性提前刷新（XFetch），仅对配置了 j2cache.early_expire.[region] 的区域生效</p>
+	 * <p>一级缓存命中时，按照 剩余有效时间 &lt;= -加载耗时 * beta * ln(random) 的概率异步重新加载数据，
+	 * 越接近失效时间刷新的概率越大，避免同时写入的大量数据在同一时刻失效导致的并发加载</p>
+	 * <p>同一个缓存键同时只会有一个刷新或者加载操作</p>
+	 * @param key cache key
+	 * @param loader data loader
+	 */
+	private void refreshEarly(String key, Object current, Function<String, Object> loader) {
+		if(earlyExpireBeta <= 0 || loader == null)
+			return;
+		long ttl = level1.ttl(key);
+		if(ttl < 0)
+			return;
+		long nanos = loadNanos;
+		double delta = (nanos > 0) ? nanos / 1000000.0d : DEFAULT_LOAD_MILLIS;
+		if(ttl > -delta * earlyExpireBeta * Math.log(ThreadLocalRandom.current().nextDouble()))
+			return;
+		CompletableFuture<Object> future = new CompletableFuture<>();
+		if(loadings.putIfAbsent(key, future) != null)
+			return;
+		//写入时单独指定的失效时间，刷新后的数据仍然使用该失效时间
+		long timeToLive = level1.timeToLive(key);
+		try {
+			refresher.execute(() -> {
+				try {
+					Object value = load(key, loader);
+					if(value != null)
+						set(key, value, timeToLive);
+					else {
+						evict(key);
+						setNullObjects(key);
+					}
+					future.complete(value);
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+					log.warn(String.format("Failed to refresh cache [%s:%s] early", name, key), e);
+				} finally {
+					loadings.remove(key, future);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			//刷新队列已满时放弃本次提前刷新，缓存数据仍然有效，等待的线程直接使用当前值
+			loadings.remove(key, future);
+			future.complete(current);
+		}
+	}
+
+	/**
+	 * 等待其他线程的加载结果
+	 * @param loading loading future
+	 * @return loaded value
+	 */
+	private static Object waitFor(CompletableFuture<Object> loading) {
+		try {
+			return loading.join();
+		} catch (CompletionException e) {
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			if(e.getCause() instanceof Error)
+				throw (Error)e.getCause();
+			throw new CacheException(e.getCause());
+		}
+	}
+
+	/**
+	 * 缓存空对象占位符，仅对配置了 j2cache.null_object.[region] 的区域生效
+	 * @param keys cache keys
+	 */
+	private void setNullObjects(String...keys) {
+		if(nullObjectConfig == null || keys.length == 0)
+			return;
+		NullObject obj = new NullObject(nullObjectConfig.expire);
+		Map<String, Object> elements = new HashMap<>();
+		for(String key : keys)
+			elements.put(key, obj);
+		level1.put(elements, nullObjectConfig.expire);
+		if(nullObjectConfig.level2)
+			level2Put(elements, nullObjectConfig.expire);
+	}
+
+	/**
+	 * 读取二级缓存，启用延迟写入时优先读取尚未写入二级缓存的数据，启用磁盘缓存时先读取磁盘缓存
+	 * @param key cache key
+	 * @return cached value
+	 */
+	private Object level2Get(String key) {
+		if(writeBehind != null) {
+			Object value = writeBehind.get(key);
+			if(value != null)
+				return value;
+		}
+		if(diskTier != null) {
+			Object value = diskTier.get(key);
+			if(value != null)
+				return value;
+		}
+		boolean probe = false;
+		if(bloomFilter != null && !bloomFilter.mightContain(key) && !(probe = bloomFilter.probe()))
+			return null;
+		Object value = level2.get(key);
+		if(bloomFilter != null) {
+			if(probe && value != null)
+				bloomFilter.falseNegative(key);
+			else if(!probe && value == null)
+				bloomFilter.falsePositive();
+		}
+		//使用磁盘缓存配置的失效时间，不再读取二级缓存的剩余有效时间，避免额外的网络往返
+		if(value != null && diskTier != null)
+			diskTier.put(key, value, 0);
+		return value;
+	}
+
+	/**
+	 * 批量读取二级缓存，启用延迟写入时优先读取尚未写入二级缓存的数据
+	 * @param keys cache keys
+	 * @return key-value objects
+	 */
+	private Map<String, Object> level2Get(Collection<String> keys) {
+		if(writeBehind == null && bloomFilter == null && diskTier == null)
+			return level2.get(keys);
+		Map<String, Object> results = new HashMap<>();
+		List<String> level2Keys = new ArrayList<>();
+		Set<String> probeKeys = new HashSet<>();
+		for(String key : keys) {
+			Object value = (writeBehind != null) ? writeBehind.get(key) : null;
+			if(value == null && diskTier != null)
+				value = diskTier.get(key);
+			if(value != null)
+				results.put(key, value);
+			else if(bloomFilter == null || bloomFilter.mightContain(key))
+				level2Keys.add(key);
+			else if(bloomFilter.probe()) {
+				level2Keys.add(key);
+				probeKeys.add(key);
+			}
+		}
+		if(!level2Keys.isEmpty()) {
+			Map<String, Object> objs = level2.get(level2Keys);
+			if(bloomFilter != null)
+				level2Keys.forEach(key -> {
+					boolean found = objs.get(key) != null;
+					if(probeKeys.contains(key) && found)
+						bloomFilter.falseNegative(key);
+					else if(!probeKeys.contains(key) && !found)
+						bloomFilter.falsePositive();
+				});
+			if(diskTier != null && !objs.isEmpty())
+				diskTier.put(objs, 0);
+			results.putAll(objs);
+		}
+		return results;
+	}
+
+	/**
+	 * 写入二级缓存并广播清除其他节点的一级缓存，启用延迟写入时由写入队列批量写入后再广播
+	 * @param key cache key
+	 * @param value cache value
+	 * @param timeToLiveInSeconds cache expired in second, never expired if less than or equal to 0
+	 */
+	private void level2Put(String key, Object value, long timeToLiveInSeconds) {
+		if(bloomFilter != null)
+			bloomFilter.put(key);
+		if(diskTier != null)
+			diskTier.put(key, value, timeToLiveInSeconds);
+		if(writeBehind == null || !writeBehind.offer(key, value, timeToLiveInSeconds)) {
+			level2.put(key, value, timeToLiveInSeconds);
+			channel.sendEvictCmd(name, key);//清除原有的一级缓存的内容
+		}
+	}
+
+	/**
+	 * 批量写入二级缓存并广播清除其他节点的一级缓存，启用延迟写入时由写入队列批量写入后再广播
+	 * @param elements Cache Elements
+	 * @param timeToLiveInSeconds cache expired in second, never expired if less than or equal to 0
+	 */
+	private void level2Put(Map<String, Object> elements, long timeToLiveInSeconds) {
+		if(bloomFilter != null)
+			bloomFilter.put(elements.keySet());
+		if(diskTier != null)
+			diskTier.put(elements, timeToLiveInSeconds);
+		Map<String, Object> rejects = (writeBehind != null) ? writeBehind.offer(elements, timeToLiveInSeconds) : elements;
+		if(!rejects.isEmpty()) {
+			level2.put(rejects, timeToLiveInSeconds);
+			//广播
+			channel.sendEvictCmd(name, rejects.keySet().stream().toArray(String[]::new));
+		}
+	}
+
+	/**
+	 * 删除二级缓存数据，启用延迟写入时同时丢弃写入队列中的数据
+	 * @param keys cache keys
+	 */
+	private void level2Evict(String...keys) {
+		if(diskTier != null)
+			diskTier.evict(keys);
+		if(writeBehind != null)
+			writeBehind.evict(keys);
+		else
+			level2.evict(keys);
+	}
+
+	/**
+	 * 将一级缓存的数据保存到快照文件，未启用快照时不做任何操作
+	 */
+	void saveSnapshot() {
+		if(snapshot != null)
+			snapshot.save(level1);
+	}
+
+	/**
+	 * 从快照文件加载一级缓存，未启用快照或者快照文件不存在时不做任何操作
+	 */
+	void restoreSnapshot() {
+		if(snapshot != null)
+			snapshot.restore(level1, level2);
+	}
+
+	/**
+	 * 从二级缓存预热一级缓存，通过 {@link Level2Cache#scanKeys()} 遍历缓存键，分批读取后写入一级缓存
+	 * 配置格式: top:N（预热遍历到的前 N 个缓存键）或者 all（预热所有缓存键）
+	 * @param cfg warm-up config, e.g. top:5000
+	 * @param executor threads used to read level 2 cache in parallel
+	 */
+	void warmup(String cfg, ExecutorService executor) {
+		long limit;
+		if("all".equalsIgnoreCase(cfg))
+			limit = Long.MAX_VALUE;
+		else if(cfg.toLowerCase().startsWith("top:"))
+			limit = Long.parseLong(cfg.substring(4).trim());
+		else
+			throw new CacheException("Illegal warm-up config: " + cfg);
+		long start = System.currentTimeMillis();
+		LongAdder count = new LongAdder();
+		Semaphore pendings = new Semaphore(WARMUP_PENDING_BATCHES);
+		AtomicReference<Throwable> error = new AtomicReference<>();
+		//SCAN 可能返回重复的缓存键，重复读取的代价很小，不去重以免在内存中保存所有缓存键
+		try (Stream<String> keys = level2.scanKeys()) {
+			List<String> batch = new ArrayList<>(WARMUP_BATCH_SIZE);
+			Iterator<String> it = keys.limit(limit).iterator();
+			while(error.get() == null && it.hasNext()) {
+				batch.add(it.next());
+				if(batch.size() >= WARMUP_BATCH_SIZE || !it.hasNext()) {
+					List<String> batchKeys = batch;
+					pendings.acquireUninterruptibly();
+					try {
+						CompletableFuture.runAsync(() -> {
+							Map<String, Object> values = level2.get(batchKeys);
+							values.values().removeIf(v -> v == null || isExpiredNullObject(v));
+							level1.put(values);
+							count.add(values.size());
+						}, executor).whenComplete((r, e) -> {
+							if(e != null)
+								error.compareAndSet(null, (e instanceof CompletionException) ? e.getCause() : e);
+							pendings.release();
+						});
+					} catch (RejectedExecutionException e) {
+						error.compareAndSet(null, e);
+						pendings.release();
+					}
+					batch = new ArrayList<>(WARMUP_BATCH_SIZE);
+				}
+			}
+		}
+		pendings.acquireUninterruptibly(WARMUP_PENDING_BATCHES);
+		if(error.get() == null)
+			log.info(String.format("Warmed up %d cache objects of region [%s] in %d ms", count.sum(), name, System.currentTimeMillis() - start));
+		else
+			log.error(String.format("Failed to warm up region [%s], %d cache objects loaded", name, count.sum()), error.get());
+	}
+
+	/**
+	 * 将延迟写入队列中的数据立即写入二级缓存，未启用延迟写入时不做任何操作
+	 */
+	public void flush() {
+		if(writeBehind != null)
+			writeBehind.flush();
+		if(counters != null)
+			counters.flush();
+	}
+
+	/**
+	 * 写入延迟写入队列和计数器中剩余的数据，并停止该区域的后台任务，关闭缓存时调用
+	 */
+	void close() {
+		if(writeBehind != null)
+			writeBehind.close();
+		if(counters != null)
+			counters.close();
+		if(bloomFilter != null) {
+			bloomFilter.close();
+			BloomFilter.unregister(name, bloomFilter);
+		}
+	}
+
+	private Counters counters() {
+		if(counters == null) {
+			synchronized (this) {
+				if(counters == null)
+					counters = new Counters(name, level2, counterInterval);
+			}
+		}
+		return counters;
+	}
+
+	/**
+	 * 累加计数器，增量先累加到本节点，定时批量写入二级缓存（见 j2cache.counter.[region]）
+	 * 计数器不经过一级缓存，也不发送广播
+	 * @param key counter key
+	 * @param delta delta
+	 */
+	public void incr(String key, long delta) {
+		counters().incr(key, delta);
+	}
+
+	/**
+	 * 递减计数器
+	 * @param key counter key
+	 * @param delta delta
+	 */
+	public void decr(String key, long delta) {
+		counters().incr(key, -delta);
+	}
+
+	/**
+	 * 读取计数器：二级缓存中的值加上本节点尚未写入二级缓存的增量
+	 * @param key counter key
+	 * @return counter value, 0 if not exists
+	 */
+	public long getCounter(String key) {
+		return counters().get(key);
+	}
+
+	/**
+	 * 是否为已经失效的空对象占位符
+	 * @param value cached value
+	 * @return true if value is an expired NullObject
+	 */
+	static boolean isExpiredNullObject(Object value) {
+		return (value instanceof NullObject) && ((NullObject)value).isExpired();
+	}
+
+	/**
+	 * <p>注册数据加载器，用于一级缓存的自动刷新（例如 caffeine.region.Users = 10000, 1h, 50m）</p>
+	 * <p>数据写入超过刷新时间后，读取时会立即返回当前数据，同时通过加载器异步重新加载一次，
+	 * 重新加载的数据会同步写入二级缓存并通知其他节点，写入时单独指定的失效时间保持不变，
+	 * 加载器返回 null 表示数据已不存在，将同时从两级缓存中删除；重新加载在提前刷新的线程池中执行</p>
+	 * @param loader data loader
+	 */
+	public void setLoader(Function<String, Object> loader) {
+		this.loader = loader;
+		level1.setLoader(key -> {
+			//写入时单独指定的失效时间，重新加载的数据在两级缓存中仍然使用该失效时间
+			long ttl = level1.timeToLive(key);
+			Object value = load(key, loader);
+			//与 set/evict 一样广播清除其他节点的一级缓存，启用延迟写入时由写入队列写入后再广播
+			if(value == null) {
+				level2Evict(key);
+				channel.sendEvictCmd(name, key);
+			}
+			else
+				level2Put(key, value, ttl);
+			return value;
+		}, refresher);
+	}
+
+	/**
+	 * 判断某个缓存键是否存在
+	 * @param key cache key
+	 * @return true if key exists
+	 */
+	public boolean exists(String key) {
+		Object value = level1.get(key);
+		if(value != null && !isExpiredNullObject(value))
+			return !(value instanceof NullObject);
+		if(nullObjectConfig != null && nullObjectConfig.level2) {
+			//二级缓存中可能存在空对象占位符
+			value = level2Get(key);
+			return value != null && !(value instanceof NullObject);
+		}
+		if(writeBehind != null && writeBehind.get(key) != null)
+			return true;
+		return (bloomFilter == null || bloomFilter.mightContain(key)) && level2.exists(key);
+	}
+
+	/**
+	 * Write data to J2Cache
+	 *
+	 * @param key: Cache key
+	 * @param value: Cache value
+	 */
+	public void set(String key, Object value)  {
+		if(value == null)
+			evict(key);
+		else{
+			level1Set(key, value, 0);
+			level2Put(key, value, 0);
+		}
+	}
+
+	/**
+	 * Write data to j2cache with expired setting
+	 * @param key Cache Key
+	 * @param value Cache value
+	 * @param timeToLiveInSeconds cache expired in second
+	 */
+	public void set(String key, Object value, long timeToLiveInSeconds)  {
+		if(timeToLiveInSeconds <= 0)
+			set(key, value);
+		else {
+			if (value == null)
+				evict(key);
+			else {
+				level1Set(key, value, timeToLiveInSeconds);
+				level2Put(key, value, timeToLiveInSeconds);
+			}
+		}
+	}
+
+	/**
+	 * 批量插入数据
+	 * @param elements Cache Elements
+	 */
+	public void set(Map<String, Object> elements)  {
+		level1Set(elements, 0);
+		level2Put(elements, 0);
+	}
+
+	/**
+	 * 带失效时间的批量缓存数据插入
+	 * @param elements Cache Elements
+	 * @param timeToLiveInSeconds cache expired in second
+	 */
+	public void set(Map<String, Object> elements, long timeToLiveInSeconds)  {
+		if(timeToLiveInSeconds <= 0)
+			set(elements);
+		else {
+			level1Set(elements, timeToLiveInSeconds);
+			level2Put(elements, timeToLiveInSeconds);
+		}
+	}
+
+	/**
+	 * 只写入一级缓存，与 {@link #level2Set(String, Object, long)} 一起完成 {@link #set(String, Object, long)}
+	 * 用于 {@link AsyncCacheChannel} 在调用线程中写入一级缓存，再异步写入二级缓存
+	 * @param key cache key
+	 * @param value cache value, not null
+	 * @param timeToLiveInSeconds cache expired in second, use region's ttl if less than or equal to 0
+	 */
+	void level1Set(String key, Object value, long timeToLiveInSeconds) {
+		//按照字节数限制容量的区域在写入前计算一次序列化后的长度，一级缓存按照实际长度计算占用的字节数
+		if(weighted)
+			hintSize(value);
+		try {
+			if(timeToLiveInSeconds <= 0)
+				level1.put(key, value);
+			else
+				level1.put(key, value, timeToLiveInSeconds);
+		} finally {
+			if(weighted)
+				SerializationUtils.hintSize(null, 0);
+		}
+	}
+
+	/**
+	 * 只写入二级缓存并广播清除其他节点的一级缓存
+	 * @param key cache key
+	 * @param value cache value, not null
+	 * @param timeToLiveInSeconds cache expired in second, never expired if less than or equal to 0
+	 */
+	void level2Set(String key, Object value, long timeToLiveInSeconds) {
+		level2Put(key, value, Math.max(timeToLiveInSeconds, 0));
+	}
+
+	/**
+	 * 批量写入一级缓存
+	 * @param elements Cache Elements
+	 * @param timeToLiveInSeconds cache expired in second, use region's ttl if less than or equal to 0
+	 */
+	void level1Set(Map<String, Object> elements, long timeToLiveInSeconds) {
+		if(weighted)
+			elements.forEach((key, value) -> level1Set(key, value, timeToLiveInSeconds));
+		else if(timeToLiveInSeconds <= 0)
+			level1.put(elements);
+		else
+			level1.put(elements, timeToLiveInSeconds);
+	}
+
+	/**
+	 * 记录即将写入一级缓存的对象序列化后的长度，计算失败时由一级缓存自行估算
+	 * @param value cache value
+	 */
+	private static void hintSize(Object value) {
+		try {
+			SerializationUtils.hintSize(value, SerializationUtils.sizeOf(value));
+		} catch (IOException e) {
+			SerializationUtils.hintSize(null, 0);
+		}
+	}
+
+	/**
+	 * 批量写入二级缓存并广播清除其他节点的一级缓存
+	 * @param elements Cache Elements
+	 * @param timeToLiveInSeconds cache expired in second, never expired if less than or equal to 0
+	 */
+	void level2Set(Map<String, Object> elements, long timeToLiveInSeconds) {
+		level2Put(elements, Math.max(timeToLiveInSeconds, 0));
+	}
+
+	/**
+	 * Remove cached data in J2Cache
+	 *
+	 * @param keys: Cache key
+	 */
+	public void evict(String...keys)  {
+		level1Remove(keys);
+		level2Remove(keys);
+	}
+
+	/**
+	 * 只删除一级缓存，与 {@link #level2Remove(String...)} 一起完成 {@link #evict(String...)}
+	 * 用于 {@link AsyncCacheChannel} 在调用线程中删除一级缓存，再异步删除二级缓存
+	 * @param keys cache keys
+	 */
+	void level1Remove(String...keys) {
+		if(counters != null)
+			counters.evict(keys);
+		level1.evict(keys);
+	}
+
+	/**
+	 * 只删除二级缓存并广播清除其他节点的一级缓存
+	 * @param keys cache keys
+	 */
+	void level2Remove(String...keys) {
+		level2Evict(keys);
+		channel.sendEvictCmd(name, keys); //发送广播
+	}
+
+	/**
+	 * Clear the cache
+	 */
+	public void clear()  {
+		if(counters != null)
+			counters.clear();
+		//先重置布隆过滤器再清除二级缓存，清除期间写入的缓存键不会被遗漏
+		if(bloomFilter != null)
+			bloomFilter.clear();
+		if(diskTier != null)
+			diskTier.clear();
+		if(writeBehind != null)
+			writeBehind.clear();
+		else
+			level2.clear();
+		//二级缓存清除后再清除一级缓存，避免清除期间从二级缓存读取到一级缓存的旧数据
+		level1.clear();
+		channel.sendClearCmd(name);
+	}
+
+	/**
+	 * 在后台清除缓存区域，二级缓存清除完成后才发送清除广播
+	 * @return future completed when the region is cleared
+	 */
+	public CompletableFuture<Void> clearAsync() {
+		if(counters != null)
+			counters.clear();
+		level1.clear();
+		if(bloomFilter != null)
+			bloomFilter.clear();
+		if(diskTier != null)
+			diskTier.clear();
+		CompletableFuture<Void> future = (writeBehind != null) ? writeBehind.clearAsync() : level2.clearAsync();
+		return future.thenRun(() -> {
+			level1.clear(); //清除期间从二级缓存读取到一级缓存的旧数据
+			channel.sendClearCmd(name);
+		});
+	}
+
+	/**
+	 * <p>Get cache region keys</p>
+	 * <p><strong>Notice: ehcache3 not support keys</strong></p>
+	 *
+	 * @return key list
+	 */
+	public Collection<String> keys()  {
+		Set<String> keys = new HashSet<>();
+		keys.addAll(level1.keys());
+		keys.addAll(level2.keys());
+		if(writeBehind != null)
+			keys.addAll(writeBehind.keys());
+		return keys;
+	}
+
+	/**
+	 * 以流的方式遍历缓存区域的缓存键，二级缓存的缓存键分批读取，不会一次性加载到内存中
+	 * 一级缓存的缓存键是二级缓存的子集，不再重复遍历；遍历期间变化的缓存键可能被遗漏或者重复返回
+	 * @return key stream
+	 */
+	public Stream<String> scanKeys() {
+		Stream<String> keys = level2.scanKeys();
+		if(writeBehind != null)
+			keys = Stream.concat(writeBehind.keys().stream(), keys);
+		return keys;
+	}
+
+	/**
+	 * 空对象缓存配置
+	 */
+	static class NullObjectConfig {
+
+		private long expire;
+		private boolean level2;
+
+		/**
+		 * 配置格式: ttl[, L2]，例如 60s 或者 5m, L2
+		 * @param cfg config value
+		 * @return null object config
+		 */
+		static NullObjectConfig parse(String cfg) {
+			NullObjectConfig config = new NullObjectConfig();
+			String[] cfgs = cfg.split(",");
+			config.expire = ConfigUtils.parseSeconds(cfgs[0]);
+			config.level2 = cfgs.length > 1 && "L2".equalsIgnoreCase(cfgs[1].trim());
+			return config;
+		}
+	}
+
+}
@@ -55,6 +55,8 @@ public interface ClusterPolicy {
      */
     default void evict(String region, String... keys) {
         CacheProviderHolder.getLevel1Cache(region).evict(keys);
+        BloomFilter.onEvict(region, keys); //其他节点写入的数据同样通过该命令通知
+        DiskTier.onEvict(region, keys);
     }
 
     /**
@@ -62,6 +64,10 @@ public interface ClusterPolicy {
      * @param region 区域名称
      */
     default void clear(String region) {
+        //先切换到二级缓存的新状态（例如 Redis generation 模式的新代数）再清除一级缓存，避免清除后又读取到旧数据
+        CacheProviderHolder.getLevel2Cache(region).onClear();
         CacheProviderHolder.getLevel1Cache(region).clear();
+        BloomFilter.onClear(region);
+        DiskTier.onClear(region);
     }
 }
@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>分布式计数器，计数先累加到本节点的 LongAdder 中，由后台线程定时批量写入二级缓存（Redis 使用 pipeline INCRBY）</p>
+ * <p>读取计数时返回二级缓存中的值加上本节点尚未写入的增量，其他节点尚未写入的增量在下次定时写入后才可见</p>
+ * <p>计数器不经过一级缓存和序列化，二级缓存中以十进制字符串保存，计数器的缓存键不应与普通缓存数据的缓存键相同</p>
+ *
+ * @author Winter Lau(javayou@gmail.com)
+ */
+class Counters {
+
+	private final static Logger log = LoggerFactory.getLogger(Counters.class);
+
+	//所有区域共用的后台写入线程
+	private final static ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "j2cache-counter");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final String region;
+	private final Level2Cache level2;
+
+	private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+	//上次写入后没有变化的计数器，从 counters 中移除后再写入一次，避免移除时正在累加的增量丢失
+	private List<Map.Entry<String, Counter>> retired = new ArrayList<>();
+	//定时写入的任务，关闭时取消
+	private final ScheduledFuture<?> task;
+
+	Counters(String region, Level2Cache level2, long interval) {
+		this.region = region;
+		this.level2 = level2;
+		this.task = flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 写入本节点剩余的增量并停止定时写入
+	 */
+	void close() {
+		flush();
+		task.cancel(false);
+	}
+
+	/**
+	 * 累加计数
+	 * @param key counter key
+	 * @param delta delta
+	 */
+	void incr(String key, long delta) {
+		Counter counter = counters.get(key);
+		if(counter == null)
+			counter = counters.computeIfAbsent(key, k -> new Counter());
+		counter.adder.add(delta);
+	}
+
+	/**
+	 * 读取计数：二级缓存中的值加上本节点尚未写入的增量
+	 * @param key counter key
+	 * @return counter value
+	 */
+	long get(String key) {
+		Counter counter = counters.get(key);
+		long value = level2.getCounter(key);
+		return (counter != null) ? value + counter.pending() : value;
+	}
+
+	/**
+	 * 丢弃尚未写入的增量
+	 * @param keys counter keys
+	 */
+	void evict(String...keys) {
+		for(String key : keys)
+			counters.remove(key);
+	}
+
+	synchronized void clear() {
+		counters.clear();
+		retired.clear();
+	}
+
+	/**
+	 * 将本节点累加的增量批量写入二级缓存，写入失败的增量保留到下次写入
+	 */
+	synchronized void flush() {
+		List<Map.Entry<String, Counter>> entries = new ArrayList<>(retired);
+		List<Map.Entry<String, Counter>> idles = new ArrayList<>();
+		for(Map.Entry<String, Counter> entry : counters.entrySet()) {
+			if(entry.getValue().pending() != 0)
+				entries.add(entry);
+			else
+				idles.add(entry);
+		}
+		retired = new ArrayList<>();
+		idles.forEach(e -> {
+			if(counters.remove(e.getKey(), e.getValue()))
+				retired.add(e);
+		});
+
+		String[] keys = new String[entries.size()];
+		long[] deltas = new long[entries.size()];
+		Counter[] flushing = new Counter[entries.size()];
+		int count = 0;
+		for(Map.Entry<String, Counter> entry : entries) {
+			Counter counter = entry.getValue();
+			long delta = counter.pending();
+			if(delta != 0) {
+				keys[count] = entry.getKey();
+				deltas[count] = delta;
+				flushing[count] = counter;
+				counter.flushed += delta;
+				count++;
+			}
+		}
+		if(count == 0)
+			return;
+		try {
+			level2.incr(Arrays.copyOf(keys, count), Arrays.copyOf(deltas, count));
+		} catch (Exception e) {
+			log.error("Failed to flush " + count + " counters of region " + region, e);
+			for(int i = 0; i < count; i++)
+				flushing[i].flushed -= deltas[i];
+			//写入失败的已移除计数器保留到下次写入
+			entries.stream().filter(entry -> entry.getValue().pending() != 0 && counters.get(entry.getKey()) != entry.getValue())
+					.forEach(retired::add);
+		}
+	}
+
+	/**
+	 * 本节点的计数器，flushed 为已经写入二级缓存的增量
+	 */
+	private static class Counter {
+
+		private final LongAdder adder = new LongAdder();
+		private volatile long flushed;
+
+		long pending() {
+			return adder.sum() - flushed;
+		}
+	}
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache;
+
+import net.oschina.j2cache.offheap.OffHeapCache;
+import net.oschina.j2cache.util.ConfigUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>一级缓存和二级缓存之间的本地磁盘缓存，缓存区域启用 j2cache.disk_tier.[region] 后，
+ * 一级缓存中不存在的数据先从本地的内存映射文件中读取，不存在时再读取二级缓存</p>
+ * <p>数据序列化后保存在内存映射文件中，堆内只保留索引；从二级缓存读取或者写入二级缓存的数据同时写入磁盘缓存</p>
+ * <p>其他节点的清除命令同样会清除本节点的磁盘缓存（见 {@link ClusterPolicy#evict(String, String...)}），
+ * 磁盘缓存不跨进程保留，每次启动时重新创建</p>
+ * <p>同一台机器上的多个进程不能使用相同的 j2cache.disk_tier_path，目录通过文件锁独占，已被其他进程使用时启动失败</p>
+ *
+ * @author Winter Lau(javayou@gmail.com)
+ */
+class DiskTier {
+
+	//各区域的磁盘缓存，用于处理其他节点的广播命令
+	private final static ConcurrentHashMap<String, DiskTier> tiers = new ConcurrentHashMap<>();
+	//本进程持有的目录锁，进程退出时释放
+	private final static ConcurrentHashMap<String, FileLock> locks = new ConcurrentHashMap<>();
+
+	private final static Logger log = LoggerFactory.getLogger(DiskTier.class);
+
+	private final static String LOCK_FILE = ".lock";
+	private final static String DEFAULT_DIR_PREFIX = "disk-";
+	//是否已经清理过已退出进程的默认目录
+	private static boolean cleaned;
+
+	private final static int PAGE_SIZE = 4 * 1024 * 1024;
+	private final static int SEGMENTS = 16;
+
+	private final OffHeapCache cache;
+
+	DiskTier(String region, Config config, String path) {
+		File dir = new File(path);
+		if(!dir.isDirectory() && !dir.mkdirs())
+			throw new CacheException("Failed to create disk tier directory " + dir);
+		lock(dir);
+		this.cache = new OffHeapCache(region, config.capacity, PAGE_SIZE, SEGMENTS, config.expire, (r, k) -> {}, dir);
+	}
+
+	/**
+	 * 未配置 j2cache.disk_tier_path 时使用临时目录下每个进程单独的子目录，
+	 * 同时删除已经退出的进程留下的子目录（未被锁定的 disk-* 目录）
+	 * @return default disk tier directory
+	 */
+	static synchronized String defaultPath() {
+		String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+		File parent = new File(System.getProperty("java.io.tmpdir"), "j2cache");
+		File dir = new File(parent, DEFAULT_DIR_PREFIX + pid);
+		if(!cleaned) {
+			cleaned = true;
+			File[] dirs = parent.listFiles(f -> f.isDirectory() && f.getName().startsWith(DEFAULT_DIR_PREFIX) && !f.equals(dir));
+			if(dirs != null)
+				Arrays.stream(dirs).forEach(DiskTier::deleteIfStale);
+		}
+		return dir.getPath();
+	}
+
+	/**
+	 * 删除没有被任何进程锁定的磁盘缓存目录
+	 * @param dir disk tier directory of another process
+	 */
+	private static void deleteIfStale(File dir) {
+		File file = new File(dir, LOCK_FILE);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			FileLock lock = channel.tryLock();
+			if(lock == null)
+				return;
+			try {
+				File[] files = dir.listFiles();
+				if(files != null)
+					for(File f : files)
+						if(!f.getName().equals(LOCK_FILE) && !f.delete())
+							log.warn("Failed to delete stale disk tier file " + f);
+				file.delete();
+				if(dir.delete())
+					log.info("Deleted stale disk tier directory " + dir);
+			} finally {
+				lock.release();
+			}
+		} catch (IOException | OverlappingFileLockException e) {
+			log.warn("Failed to check stale disk tier directory " + dir, e);
+		}
+	}
+
+	/**
+	 * 独占磁盘缓存目录，避免其他进程删除或者覆盖本进程的内存映射文件
+	 * @param dir disk tier directory
+	 */
+	private static void lock(File dir) {
+		String path;
+		try {
+			path = dir.getCanonicalPath();
+		} catch (IOException e) {
+			throw new CacheException("Failed to resolve disk tier directory " + dir, e);
+		}
+		locks.computeIfAbsent(path, p -> {
+			File file = new File(dir, LOCK_FILE);
+			try {
+				FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				FileLock lock = channel.tryLock();
+				if(lock == null) {
+					channel.close();
+					throw new CacheException("Disk tier directory " + p + " is used by another process, j2cache.disk_tier_path must be unique for each process");
+				}
+				return lock;
+			} catch (IOException e) {
+				throw new CacheException("Failed to lock " + file, e);
+			}
+		});
+	}
+
+	/**
+	 * 注册区域的磁盘缓存
+	 * @param region region name
+	 * @param tier disk tier
+	 */
+	static void register(String region, DiskTier tier) {
+		tiers.put(region, tier);
+	}
+
+	/**
+	 * 其他节点写入或者删除了缓存数据，清除本节点磁盘缓存中的数据
+	 * @param region region name
+	 * @param keys cache keys
+	 */
+	static void onEvict(String region, String...keys) {
+		DiskTier tier = tiers.get(region);
+		if(tier != null)
+			tier.evict(keys);
+	}
+
+	/**
+	 * 其他节点清除了整个缓存区域
+	 * @param region region name
+	 */
+	static void onClear(String region) {
+		DiskTier tier = tiers.get(region);
+		if(tier != null)
+			tier.clear();
+	}
+
+	Object get(String key) {
+		return cache.get(key);
+	}
+
+	Map<String, Object> get(Collection<String> keys) {
+		return cache.get(keys);
+	}
+
+	/**
+	 * 写入磁盘缓存
+	 * @param key cache key
+	 * @param value cache value
+	 * @param timeToLiveInSeconds cache expired in second, use disk tier's expire time if less than or equal to 0
+	 */
+	void put(String key, Object value, long timeToLiveInSeconds) {
+		cache.put(key, value, timeToLiveInSeconds);
+	}
+
+	void put(Map<String, Object> elements, long timeToLiveInSeconds) {
+		cache.put(elements, timeToLiveInSeconds);
+	}
+
+	void evict(String...keys) {
+		cache.evict(keys);
+	}
+
+	void clear() {
+		cache.clear();
+	}
+
+	/**
+	 * 磁盘缓存配置
+	 */
+	static class Config {
+
+		private long capacity;
+		private long expire;
+
+		/**
+		 * 配置格式: capacity[, expire]，例如 1GB, 1h
+		 * @param cfg config value
+		 * @return disk tier config
+		 */
+		static Config parse(String cfg) {
+			Config config = new Config();
+			String[] cfgs = cfg.split(",");
+			config.capacity = ConfigUtils.parseBytes(cfgs[0]);
+			if(cfgs.length > 1)
+				config.expire = ConfigUtils.parseSeconds(cfgs[1]);
+			if(config.capacity <= 0)
+				throw new CacheException("Illegal disk tier config: " + cfg);
+			return config;
+		}
+	}
+}
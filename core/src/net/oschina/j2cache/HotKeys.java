@@ -0,0 +1,241 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache;
+
+import net.oschina.j2cache.util.ConfigUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>热点缓存键统计，缓存区域启用 j2cache.hot_keys.[region] 后，每次读取都会记录缓存键的访问频率</p>
+ * <p>访问频率使用 Count-Min Sketch 估算，访问总数达到采样数量后所有计数减半，使统计结果偏向最近的访问（与 TinyLFU 相同）</p>
+ * <p>估算频率最高的 topK 个缓存键为热点缓存键</p>
+ * <p>与 Caffeine 的读缓冲区相同，读取时只把缓存键放入按线程分段的有损缓冲区，缓冲区满时由后台线程批量更新计数和热点缓存键，
+ * 缓冲区竞争激烈时丢弃部分访问记录，热点缓存键的判断结果因此有少量延迟</p>
+ *
+ * @author Winter Lau(javayou@gmail.com)
+ */
+class HotKeys {
+
+	private final static int[] SEEDS = { 0x97cb3127, 0xb492b66f, 0x9ae16a3b, 0x2f90404f };
+	//读缓冲区的分段数量以及每段的容量
+	private final static int STRIPES = Integer.highestOneBit(Math.max(4, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+	private final static int BUFFER_SIZE = 64;
+
+	//所有区域共用的统计线程
+	private final static ExecutorService drainer = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "j2cache-hot-keys");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final Config config;
+	private final int width;
+	private final int sampleSize;
+	//以下计数只在 drain 中读写（由 this 保护）
+	private final int[] table;
+	private int additions;
+
+	private final Buffer[] buffers = new Buffer[STRIPES];
+	private final AtomicBoolean draining = new AtomicBoolean();
+
+	//当前的热点缓存键及其估算的访问频率，只在 drain 中修改
+	private final ConcurrentHashMap<String, Integer> hots = new ConcurrentHashMap<>();
+	//热点缓存键已满时，成为热点缓存键需要超过的访问频率
+	private int threshold;
+
+	HotKeys(Config config) {
+		this.config = config;
+		int width = Integer.highestOneBit(Math.max(1024, config.topK * 256) - 1) << 1;
+		this.width = width;
+		this.sampleSize = width * 10;
+		this.table = new int[width * SEEDS.length];
+		for(int i = 0; i < STRIPES; i++)
+			buffers[i] = new Buffer();
+	}
+
+	/**
+	 * 热点缓存键在一级缓存中的失效时间
+	 * @return pin time to live in seconds, 0 means not pin
+	 */
+	long getPinTtl() {
+		return config.pin;
+	}
+
+	/**
+	 * 记录一次访问，放入当前线程对应的读缓冲区，缓冲区已满或者竞争失败时丢弃
+	 * @param key cache key
+	 * @return true if the key is hot
+	 */
+	boolean increment(String key) {
+		Buffer buffer = buffers[(int) Thread.currentThread().getId() & (STRIPES - 1)];
+		int tail = buffer.tail.get();
+		if(tail >= BUFFER_SIZE)
+			scheduleDrain();
+		else if(buffer.tail.compareAndSet(tail, tail + 1)) {
+			buffer.keys.lazySet(tail, key);
+			if(tail + 1 == BUFFER_SIZE)
+				scheduleDrain();
+		}
+		return hots.containsKey(key);
+	}
+
+	/**
+	 * 是否为热点缓存键
+	 * @param key cache key
+	 * @return true if the key is hot
+	 */
+	boolean isHot(String key) {
+		return hots.containsKey(key);
+	}
+
+	/**
+	 * 返回当前的热点缓存键，按照访问频率从高到低排序
+	 * @return key-frequency map
+	 */
+	Map<String, Integer> hotKeys() {
+		drain();
+		Map<String, Integer> results = new LinkedHashMap<>();
+		hots.entrySet().stream()
+				.sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+				.forEach(e -> results.put(e.getKey(), e.getValue()));
+		return results;
+	}
+
+	private void scheduleDrain() {
+		if(!draining.get() && draining.compareAndSet(false, true))
+			drainer.execute(() -> {
+				try {
+					drain();
+				} finally {
+					draining.set(false);
+				}
+			});
+	}
+
+	/**
+	 * 将读缓冲区中的访问记录批量计入频率统计
+	 */
+	private synchronized void drain() {
+		for(Buffer buffer : buffers) {
+			int size = Math.min(buffer.tail.get(), BUFFER_SIZE);
+			for(int i = 0; i < size; i++) {
+				String key = buffer.keys.getAndSet(i, null);
+				if(key != null)
+					record(key);
+			}
+			buffer.tail.set(0);
+		}
+	}
+
+	private void record(String key) {
+		int hash = spread(key.hashCode());
+		int frequency = Integer.MAX_VALUE;
+		for(int i = 0; i < SEEDS.length; i++)
+			frequency = Math.min(frequency, ++table[indexOf(hash, i)]);
+		if(++additions >= sampleSize)
+			reset();
+		if(hots.replace(key, frequency) != null)
+			return;
+		if(hots.size() < config.topK || frequency > threshold)
+			offer(key, frequency);
+	}
+
+	private void offer(String key, int frequency) {
+		hots.put(key, frequency);
+		if(hots.size() > config.topK) {
+			String coldest = null;
+			int min = Integer.MAX_VALUE;
+			for(Map.Entry<String, Integer> entry : hots.entrySet()) {
+				if(entry.getValue() < min) {
+					min = entry.getValue();
+					coldest = entry.getKey();
+				}
+			}
+			hots.remove(coldest);
+		}
+		updateThreshold();
+	}
+
+	/**
+	 * 所有计数减半
+	 */
+	private void reset() {
+		for(int i = 0; i < table.length; i++)
+			table[i] >>>= 1;
+		additions = sampleSize >>> 1;
+		hots.replaceAll((k, v) -> v >>> 1);
+		updateThreshold();
+	}
+
+	private void updateThreshold() {
+		threshold = (hots.size() < config.topK) ? 0 : hots.values().stream().mapToInt(Integer::intValue).min().orElse(0);
+	}
+
+	private int indexOf(int hash, int i) {
+		int h = (hash + SEEDS[i]) * SEEDS[i];
+		h += (h >>> 16);
+		return i * width + (h & (width - 1));
+	}
+
+	private static int spread(int x) {
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+
+	/**
+	 * 读缓冲区的一段，写入位置超过容量后不再写入，直到被 drain 清空
+	 */
+	private static class Buffer {
+
+		private final AtomicReferenceArray<String> keys = new AtomicReferenceArray<>(BUFFER_SIZE);
+		private final AtomicInteger tail = new AtomicInteger();
+	}
+
+	/**
+	 * 热点缓存键配置
+	 */
+	static class Config {
+
+		private int topK;
+		private long pin;
+
+		/**
+		 * 配置格式: topK[, pin]，例如 20, 10m
+		 * topK -> 热点缓存键的数量
+		 * pin -> 热点缓存键在一级缓存中的失效时间，不配置时只统计不延长失效时间
+		 * @param cfg config value
+		 * @return hot keys config
+		 */
+		static Config parse(String cfg) {
+			Config config = new Config();
+			String[] cfgs = cfg.split(",");
+			config.topK = Integer.parseInt(cfgs[0].trim());
+			if(cfgs.length > 1)
+				config.pin = ConfigUtils.parseSeconds(cfgs[1]);
+			if(config.topK <= 0)
+				throw new CacheException("Illegal hot keys config: " + cfg);
+			return config;
+		}
+	}
+}
@@ -24,6 +24,7 @@ import java.io.InputStream;
 import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * J2Cache 的缓存入口
@@ -36,13 +37,15 @@ public class J2Cache {
 	private final static String CONFIG_FILE = "/j2cache.properties";
 
 	private final static CacheChannel channel;
+	private final static AsyncCacheChannel asyncChannel;
 	private static ClusterPolicy policy; //不同的广播策略
+	private static ExecutorService asyncExecutor; //异步接口中执行二级缓存操作的线程池
 
 	static {
 		try {
-			initFromConfig();
+			Properties props = initFromConfig();
 			/* 初始化缓存接口 */
-			channel = new CacheChannel(){
+			channel = new CacheChannel(props){
 				//为了避免发送广播的堵塞或者延迟导致的应用响应速度慢，因此采用线程方式发送
 				ExecutorService threadPool = Executors.newCachedThreadPool();
 
@@ -58,11 +61,17 @@ public class J2Cache {
 
 				@Override
 				public void close() {
+					saveSnapshots();
+					closeRegions();
 					threadPool.shutdownNow();
+					asyncExecutor.shutdown();
 					policy.disconnect();
 					CacheProviderHolder.shutdown();
 				}
 			};
+			asyncChannel = new AsyncCacheChannel(channel, asyncExecutor);
+			channel.restoreSnapshots();
+			channel.warmup();
 		} catch (IOException e) {
 			throw new CacheException("Failed to load j2cache configuration " + CONFIG_FILE, e);
 		}
@@ -76,20 +85,37 @@ public class J2Cache {
 		return channel;
 	}
 
+	/**
+	 * 返回异步的缓存操作接口
+	 * @return AsyncCacheChannel
+	 */
+	public static AsyncCacheChannel getAsyncChannel(){
+		return asyncChannel;
+	}
+
 	/**
 	 * 加载配置
-	 * @return
+	 * @return j2cache 配置信息
 	 * @throws IOException
 	 */
-	private static void initFromConfig() throws IOException {
+	private static Properties initFromConfig() throws IOException {
 		try(InputStream configStream = getConfigStream()){
 			Properties props = new Properties();
 			props.load(configStream);
 			SerializationUtils.init(props.getProperty("j2cache.serialization"));
+			SerializationUtils.initCompression(props);
+			int asyncThreads = Integer.parseInt(props.getProperty("j2cache.async.threads", String.valueOf(Runtime.getRuntime().availableProcessors() * 2)).trim());
+			AtomicInteger threadSeq = new AtomicInteger();
+			asyncExecutor = Executors.newFixedThreadPool(asyncThreads, r -> {
+				Thread t = new Thread(r, "j2cache-async-" + threadSeq.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
 			//初始化两级的缓存管理
 			CacheProviderHolder.init(props, (region, key)->{
 				//当一级缓存中的对象失效时，自动清除二级缓存中的数据
 				CacheProviderHolder.getLevel2Cache(region).evict(key);
+				DiskTier.onEvict(region, key);
 				log.debug(String.format("Level 1 cache object expired, evict level 2 cache object [%s,%s]", region, key));
 				if(policy != null)
 					policy.sendEvictCmd(region, key);
@@ -114,6 +140,7 @@ public class J2Cache {
 				policy = ClusterPolicyFactory.custom(cache_broadcast, props);
 
 			log.info("Using cluster policy : " + policy.getClass().getName());
+			return props;
 		}
 	}
 
@@ -97,6 +97,14 @@ public class J2CacheCmd {
 						System.out.println("none!");
 				}
 				else
+				if("hotkeys".equalsIgnoreCase(cmds[0])){
+					Map<String, Integer> hotKeys = cache.hotKeys(cmds[1]);
+					if(hotKeys.size() > 0)
+						hotKeys.forEach((key,frequency) -> System.out.printf("[%s,%s]=>%d\n", cmds[1], key, frequency));
+					else
+						System.out.println("none!");
+				}
+				else
 				if("ttl".equalsIgnoreCase(cmds[0])){
 					if(cmds.length == 1){
 						System.out.printf("TTL => %d\n", TTL);
@@ -131,13 +139,14 @@ public class J2CacheCmd {
 
 	private static void printHelp() {
 		System.out.println("Usage: [cmd] region key [value]");
-		System.out.println("cmd: get/mget/set/mset/evict/keys/clear/ttl/quit/exit/help");
+		System.out.println("cmd: get/mget/set/mset/evict/keys/hotkeys/clear/ttl/quit/exit/help");
 		System.out.println("Examples:");
 		System.out.println("\tset region key value");
 		System.out.println("\tget region key");
 		System.out.println("\tmget region key1 key2 key3");
 		System.out.println("\tmset region key1:value1 key2:value2 key3:value3");
 		System.out.println("\tkeys region");
+		System.out.println("\thotkeys region");
 		System.out.println("\tttl [seconds]");
 		System.out.println("\texit");
 	}
@@ -15,9 +15,75 @@
  */
 package net.oschina.j2cache;
 
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
 /**
  * 以及缓存接口
  * @author Winter Lau(javayou@gmail.com)
  */
 public interface Level1Cache extends Cache {
+
+    /**
+     * 设置数据加载器，支持自动刷新的缓存在数据写入一段时间后，读取时会返回当前数据并通过加载器异步重新加载
+     * 不支持自动刷新的缓存忽略该设置
+     * @param loader data loader
+     */
+    default void setLoader(Function<String, Object> loader) {}
+
+    /**
+     * 设置数据加载器，并指定自动刷新时执行加载器的线程池
+     * @param loader data loader
+     * @param executor executor to run the loader when refreshing
+     */
+    default void setLoader(Function<String, Object> loader, Executor executor) {
+        setLoader(loader);
+    }
+
+    /**
+     * 返回写入缓存数据时单独指定的失效时间，自动刷新时按照该失效时间重新写入
+     * @param key cache key
+     * @return time to live in seconds, 0 if the key uses region's expire time or not supported
+     */
+    default long timeToLive(String key) {
+        return 0;
+    }
+
+    /**
+     * 返回缓存数据的剩余有效时间
+     * @param key cache key
+     * @return remaining time to live in milliseconds, -1 if key not exists or not supported
+     */
+    default long ttl(String key) {
+        return -1;
+    }
+
+    /**
+     * 返回缓存数据当前占用的字节数，只有按照字节数限制容量的缓存区域支持
+     * @return weighted size in bytes, -1 if not supported
+     */
+    default long weightedSize() {
+        return -1;
+    }
+
+    /**
+     * 写入缓存数据并单独指定该数据的失效时间，不支持单个缓存键失效时间的实现将使用区域的失效时间
+     * @param key cache key
+     * @param value cache value
+     * @param timeToLiveInSeconds cache expired in second, use region's expire time if less than or equal to 0
+     */
+    default void put(String key, Object value, long timeToLiveInSeconds) {
+        put(key, value);
+    }
+
+    /**
+     * 批量写入缓存数据并单独指定这些数据的失效时间，不支持单个缓存键失效时间的实现将使用区域的失效时间
+     * @param elements cache elements
+     * @param timeToLiveInSeconds cache expired in second, use region's expire time if less than or equal to 0
+     */
+    default void put(Map<String, Object> elements, long timeToLiveInSeconds) {
+        elements.forEach((k, v) -> put(k, v, timeToLiveInSeconds));
+    }
+
 }
@@ -16,12 +16,17 @@
 package net.oschina.j2cache;
 
 import net.oschina.j2cache.util.SerializationUtils;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * 二级缓存接口
@@ -36,6 +41,21 @@ public interface Level2Cache extends Cache {
      */
     byte[] getBytes(String key);
 
+    /**
+     * 批量读取缓存数据字节数组，不存在的键不包含在返回结果中
+     * @param keys cache keys
+     * @return key-bytes map
+     */
+    default Map<String, byte[]> getBytes(Collection<String> keys) {
+        Map<String, byte[]> results = new HashMap<>();
+        for(String key : keys) {
+            byte[] bytes = getBytes(key);
+            if(bytes != null)
+                results.put(key, bytes);
+        }
+        return results;
+    }
+
     /**
      * 设置缓存数据字节数组
      * @param key
@@ -43,6 +63,78 @@ public interface Level2Cache extends Cache {
      */
     void setBytes(String key, byte[] bytes);
 
+    /**
+     * 批量设置缓存数据字节数组
+     * @param bytes key-bytes map
+     */
+    default void setBytes(Map<String, byte[]> bytes) {
+        bytes.forEach((k,v) -> setBytes(k, v));
+    }
+
+    /**
+     * 设置缓存数据字节数组并指定失效时间，不支持单个缓存键失效时间的实现将忽略该参数
+     * @param key cache key
+     * @param bytes cache data
+     * @param timeToLiveInSeconds cache expired in second, never expired if less than or equal to 0
+     */
+    default void setBytes(String key, byte[] bytes, long timeToLiveInSeconds) {
+        setBytes(key, bytes);
+    }
+
+    /**
+     * 批量设置缓存数据字节数组并指定失效时间，不支持单个缓存键失效时间的实现将忽略该参数
+     * @param bytes key-bytes map
+     * @param timeToLiveInSeconds cache expired in second, never expired if less than or equal to 0
+     */
+    default void setBytes(Map<String, byte[]> bytes, long timeToLiveInSeconds) {
+        setBytes(bytes);
+    }
+
+    /**
+     * 返回缓存数据在二级缓存中的剩余有效时间
+     * @param key cache key
+     * @return remaining time to live in milliseconds, -1 if key not exists, never expired or not supported
+     */
+    default long ttl(String key) {
+        return -1;
+    }
+
+    /**
+     * 批量返回缓存数据在二级缓存中的剩余有效时间，结果中只包含设置了失效时间的缓存键
+     * @param keys cache keys
+     * @return key-ttl map, ttl in milliseconds
+     */
+    default Map<String, Long> ttl(Collection<String> keys) {
+        Map<String, Long> results = new HashMap<>();
+        for (String key : keys) {
+            long ttl = ttl(key);
+            if (ttl > 0)
+                results.put(key, ttl);
+        }
+        return results;
+    }
+
+    /**
+     * 批量累加计数器，计数器以十进制字符串保存，不经过序列化
+     * 默认实现逐个读取后写入，不是原子操作，支持原子累加的实现（例如 Redis 的 INCRBY）应覆盖该方法
+     * @param keys counter keys
+     * @param deltas deltas of each counter
+     */
+    default void incr(String[] keys, long[] deltas) {
+        for (int i = 0; i < keys.length; i++)
+            setBytes(keys[i], String.valueOf(getCounter(keys[i]) + deltas[i]).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * 读取计数器
+     * @param key counter key
+     * @return counter value, 0 if not exists
+     */
+    default long getCounter(String key) {
+        byte[] bytes = getBytes(key);
+        return (bytes != null) ? Long.parseLong(new String(bytes, StandardCharsets.US_ASCII)) : 0;
+    }
+
     /**
      * 判断缓存数据是否存在
      * @param key cache key
@@ -59,6 +151,17 @@ public interface Level2Cache extends Cache {
      */
     Collection<String> keys() ;
 
+    /**
+     * 以流的方式遍历所有的缓存键，支持增量遍历的实现（例如 Redis 的 SCAN/HSCAN）不会一次性读取所有的缓存键，
+     * 遍历期间变化的缓存键可能被遗漏或者重复返回；使用完毕后应关闭返回的流
+     *
+     * @return 缓存键的流
+     */
+    default Stream<String> scanKeys() {
+        Collection<String> keys = keys();
+        return (keys != null) ? keys.stream() : Stream.empty();
+    }
+
     /**
      * Remove items from the cache
      *
@@ -71,19 +174,59 @@ public interface Level2Cache extends Cache {
      */
     void clear();
 
+    /**
+     * 在后台清除缓存，支持增量清除的实现（例如 Redis generic 模式）会分批删除缓存数据，不会长时间阻塞缓存服务
+     * 清除完成前仍然可能读取到旧的缓存数据
+     *
+     * @return future completed when the cache is cleared
+     */
+    default CompletableFuture<Void> clearAsync() {
+        return CompletableFuture.runAsync(this::clear);
+    }
+
+    /**
+     * 收到其他节点清除整个缓存区域的广播，二级缓存已经被其他节点清除，需要刷新本地状态的实现可以覆盖该方法
+     */
+    default void onClear() {
+    }
+
+    /**
+     * 读取缓存数据，无法反序列化的数据（例如没有压缩算法标识的旧数据）视为不存在并删除
+     * @param key cache key
+     * @return cache object
+     */
     @Override
     default Object get(String key) {
         byte[] bytes = getBytes(key);
         try {
             return SerializationUtils.deserialize(bytes);
-        } catch (IOException e) {
-            throw new CacheException(e);
+        } catch (IOException | RuntimeException e) {
+            LoggerFactory.getLogger(Level2Cache.class).warn("Unreadable cache data evicted: " + key, e);
+            evict(key);
+            return null;
         }
     }
 
+    /**
+     * 批量读取缓存数据，通过 {@link #getBytes(Collection)} 一次性从二级缓存读取，不存在的键不包含在返回结果中
+     * @param keys cache keys
+     * @return key-value objects
+     */
     @Override
     default Map<String, Object> get(Collection<String> keys) {
-        return keys.stream().collect(Collectors.toMap(Function.identity(), key -> get(key)));
+        Map<String, Object> results = new HashMap<>();
+        List<String> unreadable = new ArrayList<>(0);
+        for(Map.Entry<String, byte[]> entry : getBytes(keys).entrySet()) {
+            try {
+                results.put(entry.getKey(), SerializationUtils.deserialize(entry.getValue()));
+            } catch (IOException | RuntimeException e) {
+                LoggerFactory.getLogger(Level2Cache.class).warn("Unreadable cache data evicted: " + entry.getKey(), e);
+                unreadable.add(entry.getKey());
+            }
+        }
+        if(!unreadable.isEmpty())
+            evict(unreadable.toArray(new String[unreadable.size()]));
+        return results;
     }
 
     @Override
@@ -95,8 +238,38 @@ public interface Level2Cache extends Cache {
         }
     }
 
+    /**
+     * 写入缓存数据并指定失效时间，不支持单个缓存键失效时间的实现将忽略该参数
+     * @param key cache key
+     * @param value cache value
+     * @param timeToLiveInSeconds cache expired in second, never expired if less than or equal to 0
+     */
+    default void put(String key, Object value, long timeToLiveInSeconds) {
+        put(key, value);
+    }
+
+    /**
+     * 批量写入缓存数据，序列化后通过 {@link #setBytes(Map)} 一次性写入二级缓存
+     * @param elements key-value objects
+     */
     @Override
     default void put(Map<String, Object> elements) {
-        elements.forEach((k,v) -> put(k, v));
+        Map<String, byte[]> bytes = new HashMap<>();
+        try {
+            for(Map.Entry<String, Object> entry : elements.entrySet())
+                bytes.put(entry.getKey(), SerializationUtils.serialize(entry.getValue()));
+        } catch (IOException e) {
+            throw new CacheException(e);
+        }
+        setBytes(bytes);
+    }
+
+    /**
+     * 批量写入缓存数据并指定失效时间，不支持单个缓存键失效时间的实现将忽略该参数
+     * @param elements key-value objects
+     * @param timeToLiveInSeconds cache expired in second, never expired if less than or equal to 0
+     */
+    default void put(Map<String, Object> elements, long timeToLiveInSeconds) {
+        put(elements);
     }
 }
@@ -16,6 +16,7 @@
 package net.oschina.j2cache;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -41,7 +42,7 @@ public class NullCache implements Level1Cache, Level2Cache {
 
 	@Override
 	public Map get(Collection<String> keys) {
-		return null;
+		return Collections.emptyMap();
 	}
 
 	@Override
@@ -54,6 +55,21 @@ public class NullCache implements Level1Cache, Level2Cache {
 
 	}
 
+	@Override
+	public void put(String key, Object value, long timeToLiveInSeconds) {
+
+	}
+
+	@Override
+	public void put(Map<String, Object> elements, long timeToLiveInSeconds) {
+
+	}
+
+	@Override
+	public long ttl(String key) {
+		return -1;
+	}
+
 	@Override
 	public byte[] getBytes(String key) {
 		return null;
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache;
+
+import java.io.Serializable;
+
+/**
+ * <p>空对象占位符，用于缓存不存在的数据，避免对不存在数据的重复查询穿透到二级缓存和数据库</p>
+ * <p>占位符自带失效时间，即使缓存本身不支持单独设置失效时间，过期的占位符在读取时也会被忽略</p>
+ *
+ * @author Winter Lau(javayou@gmail.com)
+ */
+public class NullObject implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private long expireAt;
+
+	public NullObject() {}//just for deserialize
+
+	public NullObject(long timeToLiveInSeconds) {
+		this.expireAt = System.currentTimeMillis() + timeToLiveInSeconds * 1000;
+	}
+
+	public long getExpireAt() {
+		return expireAt;
+	}
+
+	public void setExpireAt(long expireAt) {
+		this.expireAt = expireAt;
+	}
+
+	/**
+	 * 占位符是否已经过期
+	 * @return true if expired
+	 */
+	public boolean isExpired() {
+		return System.currentTimeMillis() >= expireAt;
+	}
+
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache;
+
+import net.oschina.j2cache.util.SerializationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * <p>一级缓存快照，缓存区域启用 j2cache.snapshot.[region] 后，关闭缓存时将一级缓存的数据（缓存键、序列化后的数据以及失效时间）保存到本地文件，
+ * 下次启动时在提供服务前重新加载到一级缓存中</p>
+ * <p>快照中保存未压缩的序列化数据，加载时批量读取二级缓存中对应的数据，解压后与快照中的数据完全相同时才加载，
+ * 停机期间被修改或者删除的缓存数据不会被加载，压缩算法、字典以及压缩阈值的变化不影响校验；快照文件加载后即被删除</p>
+ *
+ * @author Winter Lau(javayou@gmail.com)
+ */
+class Snapshot {
+
+	private final static Logger log = LoggerFactory.getLogger(Snapshot.class);
+
+	private final static int MAGIC = 0x4A32534E;
+	private final static int VERSION = 2;
+	//缓存键 UTF-8 编码后的最大长度，超过的缓存键不保存
+	private final static int MAX_KEY_LENGTH = 1024 * 1024;
+	//加载时每批校验的数量
+	private final static int BATCH_SIZE = 1000;
+
+	private final String region;
+	private final File file;
+	private final int maxEntries;
+
+	Snapshot(String region, String path, int maxEntries) {
+		this.region = region;
+		this.file = new File(path, region + ".snapshot");
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * 将一级缓存的数据保存到快照文件，先写入临时文件再替换，避免保存失败时留下不完整的快照
+	 * @param level1 level 1 cache
+	 */
+	void save(Level1Cache level1) {
+		long now = System.currentTimeMillis();
+		File tmp = null;
+		int count = 0;
+		try {
+			File dir = file.getParentFile();
+			if(!dir.isDirectory() && !dir.mkdirs())
+				throw new IOException("Failed to create snapshot directory " + dir);
+			//同一目录下的多个进程各自使用不同的临时文件
+			tmp = Files.createTempFile(dir.toPath(), region + ".", ".tmp").toFile();
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(now);
+				for(String key : level1.keys()) {
+					if(count >= maxEntries)
+						break;
+					Object value = level1.get(key);
+					if(value == null || value instanceof NullObject)
+						continue;
+					long ttl = level1.ttl(key);
+					byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+					if(keyBytes.length > MAX_KEY_LENGTH) {
+						log.warn(String.format("Cache key of region [%s] is too long (%d bytes), skipped in snapshot.", region, keyBytes.length));
+						continue;
+					}
+					byte[] bytes;
+					try {
+						bytes = SerializationUtils.serializeUncompressed(value);
+					} catch (IOException e) {
+						log.warn(String.format("Failed to serialize cache object [%s,%s], skipped in snapshot.", region, key), e);
+						continue;
+					}
+					out.writeBoolean(true);
+					out.writeInt(keyBytes.length);
+					out.write(keyBytes);
+					out.writeLong((ttl > 0 && ttl < Long.MAX_VALUE - now) ? now + ttl : 0);
+					out.writeInt(bytes.length);
+					out.write(bytes);
+					count++;
+				}
+				out.writeBoolean(false);
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			log.info(String.format("Saved %d cache objects of region [%s] to snapshot %s in %d ms", count, region, file, System.currentTimeMillis() - now));
+		} catch (IOException e) {
+			if(tmp != null)
+				tmp.delete();
+			log.error(String.format("Failed to save snapshot of region [%s]", region), e);
+		}
+	}
+
+	/**
+	 * 从快照文件加载一级缓存，已经失效或者与二级缓存不一致的数据被丢弃
+	 * @param level1 level 1 cache
+	 * @param level2 level 2 cache used to discard objects invalidated while the node was down
+	 */
+	void restore(Level1Cache level1, Level2Cache level2) {
+		if(!file.isFile())
+			return;
+		long start = System.currentTimeMillis();
+		int restored = 0, total = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("Unknown snapshot format");
+			in.readLong();
+			Map<String, Entry> batch = new HashMap<>();
+			while(in.readBoolean()) {
+				String key = new String(readBytes(in, MAX_KEY_LENGTH), StandardCharsets.UTF_8);
+				long expireAt = in.readLong();
+				byte[] bytes = readBytes(in, Integer.MAX_VALUE);
+				total++;
+				batch.put(key, new Entry(bytes, expireAt));
+				if(batch.size() >= BATCH_SIZE) {
+					restored += restore(batch, level1, level2);
+					batch.clear();
+				}
+			}
+			restored += restore(batch, level1, level2);
+			log.info(String.format("Restored %d cache objects of region [%s] from snapshot, %d discarded, %d ms", restored, region, total - restored, System.currentTimeMillis() - start));
+		} catch (IOException e) {
+			log.error(String.format("Failed to restore snapshot of region [%s]", region), e);
+		} finally {
+			if(!file.delete())
+				log.warn("Failed to delete snapshot " + file);
+		}
+	}
+
+	private int restore(Map<String, Entry> batch, Level1Cache level1, Level2Cache level2) throws IOException {
+		if(batch.isEmpty())
+			return 0;
+		//没有二级缓存时无法校验，全部加载
+		Map<String, byte[]> level2Bytes = (level2 instanceof NullCache) ? null : level2.getBytes(batch.keySet());
+		long now = System.currentTimeMillis();
+		int count = 0;
+		for(Map.Entry<String, Entry> e : batch.entrySet()) {
+			Entry entry = e.getValue();
+			long ttl = (entry.expireAt > 0) ? (entry.expireAt - now) / 1000 : 0;
+			if(entry.expireAt > 0 && ttl <= 0)
+				continue;
+			//二级缓存中的数据可能使用了不同的压缩算法或者字典，解压后再比较
+			if(level2Bytes != null && !matches(entry.bytes, level2Bytes.get(e.getKey())))
+				continue;
+			level1.put(e.getKey(), SerializationUtils.deserializeUncompressed(entry.bytes), ttl);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * 快照中的数据与二级缓存中的数据是否一致，二级缓存中无法识别的数据视为不一致
+	 */
+	private static boolean matches(byte[] bytes, byte[] level2Bytes) {
+		try {
+			return Arrays.equals(bytes, SerializationUtils.decompress(level2Bytes));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * 读取以长度开头的字节数组
+	 */
+	private static byte[] readBytes(DataInputStream in, int maxLength) throws IOException {
+		int length = in.readInt();
+		if(length < 0 || length > maxLength)
+			throw new IOException("Corrupted snapshot, illegal length: " + length);
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	/**
+	 * 快照中的缓存数据
+	 */
+	private static class Entry {
+
+		private final byte[] bytes;
+		private final long expireAt;
+
+		Entry(byte[] bytes, long expireAt) {
+			this.bytes = bytes;
+			this.expireAt = expireAt;
+		}
+	}
+}
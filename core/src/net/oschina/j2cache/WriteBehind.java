@@ -0,0 +1,277 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>二级缓存延迟写入队列，缓存区域启用 j2cache.write_behind.[region] 后，写入二级缓存的操作先放入队列，由后台线程批量写入</p>
+ * <p>同一个缓存键在写入二级缓存前的多次修改只会写入最后一次的数据，批量写入完成后才发送清除其他节点一级缓存的广播</p>
+ * <p>队列已满时写入操作直接同步写入二级缓存；清除缓存数据时会丢弃队列中对应的数据</p>
+ *
+ * @author Winter Lau(javayou@gmail.com)
+ */
+class WriteBehind {
+
+	private final static Logger log = LoggerFactory.getLogger(WriteBehind.class);
+
+	//所有区域共用的后台写入线程
+	private final static ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "j2cache-write-behind");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final CacheChannel channel;
+	private final String region;
+	private final Level2Cache level2;
+	private final Config config;
+
+	//等待写入二级缓存的数据，同一个缓存键只保留最后一次写入的数据
+	private final ConcurrentHashMap<String, Pending> pendings = new ConcurrentHashMap<>();
+	private final AtomicInteger counter = new AtomicInteger();
+	private final AtomicBoolean flushing = new AtomicBoolean();
+
+	//同一时间只有一个批量写入，写入二级缓存时不持有队列的锁
+	private final Object flushLock = new Object();
+	//正在写入二级缓存的缓存键，写入期间被删除的缓存键在写入完成后需要再次从二级缓存删除（以下字段由 this 保护）
+	private Set<String> inFlight;
+	private final Set<String> evictedInFlight = new HashSet<>();
+	private boolean clearedInFlight;
+	//定时写入的任务，关闭时取消
+	private final ScheduledFuture<?> task;
+
+	WriteBehind(CacheChannel channel, String region, Level2Cache level2, Config config) {
+		this.channel = channel;
+		this.region = region;
+		this.level2 = level2;
+		this.config = config;
+		this.task = flusher.scheduleWithFixedDelay(this::flush, config.interval, config.interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 写入队列中剩余的数据并停止定时写入
+	 */
+	void close() {
+		flush();
+		task.cancel(false);
+	}
+
+	/**
+	 * 读取尚未写入二级缓存的数据
+	 * @param key cache key
+	 * @return pending value or null
+	 */
+	Object get(String key) {
+		Pending pending = pendings.isEmpty() ? null : pendings.get(key);
+		return (pending != null) ? pending.value : null;
+	}
+
+	/**
+	 * 尚未写入二级缓存的缓存键
+	 * @return pending keys
+	 */
+	Collection<String> keys() {
+		return new ArrayList<>(pendings.keySet());
+	}
+
+	/**
+	 * 将数据放入写入队列
+	 * @param key cache key
+	 * @param value cache value
+	 * @param timeToLiveInSeconds cache expired in second, never expired if less than or equal to 0
+	 * @return false if queue is full, the caller should write level 2 cache directly
+	 */
+	boolean offer(String key, Object value, long timeToLiveInSeconds) {
+		if(counter.get() >= config.size && !pendings.containsKey(key))
+			return false;
+		if(pendings.put(key, new Pending(value, timeToLiveInSeconds)) == null && counter.incrementAndGet() >= config.batch)
+			triggerFlush();
+		return true;
+	}
+
+	/**
+	 * 批量将数据放入写入队列
+	 * @param elements cache elements
+	 * @param timeToLiveInSeconds cache expired in second, never expired if less than or equal to 0
+	 * @return elements not accepted because the queue is full
+	 */
+	Map<String, Object> offer(Map<String, Object> elements, long timeToLiveInSeconds) {
+		Map<String, Object> rejects = new HashMap<>();
+		elements.forEach((k, v) -> {
+			if(!offer(k, v, timeToLiveInSeconds))
+				rejects.put(k, v);
+		});
+		return rejects;
+	}
+
+	/**
+	 * 从写入队列和二级缓存中删除数据，正在写入二级缓存的数据在写入完成后会再次删除，避免旧数据在删除后被写入
+	 * @param keys cache keys
+	 */
+	void evict(String...keys) {
+		synchronized(this) {
+			for(String key : keys) {
+				if(pendings.remove(key) != null)
+					counter.decrementAndGet();
+				if(inFlight != null && inFlight.contains(key))
+					evictedInFlight.add(key);
+			}
+		}
+		level2.evict(keys);
+	}
+
+	/**
+	 * 清空写入队列和二级缓存
+	 */
+	void clear() {
+		discard();
+		level2.clear();
+	}
+
+	/**
+	 * 清空写入队列并在后台清除二级缓存
+	 * @return future completed when level 2 cache is cleared
+	 */
+	CompletableFuture<Void> clearAsync() {
+		discard();
+		return level2.clearAsync();
+	}
+
+	private synchronized void discard() {
+		pendings.clear();
+		counter.set(0);
+		if(inFlight != null)
+			clearedInFlight = true;
+	}
+
+	private void triggerFlush() {
+		if(flushing.compareAndSet(false, true))
+			flusher.execute(() -> {
+				flushing.set(false);
+				flush();
+			});
+	}
+
+	/**
+	 * 将队列中的数据批量写入二级缓存，写入失败的数据保留在队列中等待下次写入
+	 * 每次最多写入调用时队列中的数据量，持续写入时不会一直占用所有区域共用的写入线程
+	 */
+	void flush() {
+		synchronized(flushLock) {
+			int remaining = counter.get();
+			while(remaining > 0) {
+				Map<String, Pending> batch = new HashMap<>();
+				synchronized(this) {
+					Iterator<Map.Entry<String, Pending>> it = pendings.entrySet().iterator();
+					while(it.hasNext() && batch.size() < Math.min(config.batch, remaining)) {
+						Map.Entry<String, Pending> entry = it.next();
+						batch.put(entry.getKey(), entry.getValue());
+					}
+					if(batch.isEmpty())
+						return;
+					inFlight = batch.keySet();
+				}
+				remaining -= batch.size();
+				//按失效时间分组写入
+				Map<Long, Map<String, Object>> groups = new HashMap<>();
+				batch.forEach((k, v) -> groups.computeIfAbsent(v.ttl, ttl -> new HashMap<>()).put(k, v.value));
+				boolean written = false;
+				try {
+					groups.forEach((ttl, elements) -> level2.put(elements, ttl));
+					written = true;
+				} catch (Exception e) {
+					log.error("Failed to write behind " + batch.size() + " elements of region " + region, e);
+				}
+				Collection<String> stales;
+				synchronized(this) {
+					stales = clearedInFlight ? batch.keySet() : new ArrayList<>(evictedInFlight);
+					inFlight = null;
+					evictedInFlight.clear();
+					clearedInFlight = false;
+					//写入期间被再次修改的数据保留在队列中
+					if(written)
+						batch.forEach((k, v) -> {
+							if(pendings.remove(k, v))
+								counter.decrementAndGet();
+						});
+				}
+				//写入期间被删除或者清除的数据再次从二级缓存删除
+				if(!stales.isEmpty())
+					level2.evict(stales.toArray(new String[stales.size()]));
+				if(!written)
+					return;
+				channel.sendEvictCmd(region, batch.keySet().stream().toArray(String[]::new));
+			}
+		}
+	}
+
+	/**
+	 * 等待写入的数据及其失效时间
+	 */
+	private static class Pending {
+
+		private final Object value;
+		private final long ttl;
+
+		Pending(Object value, long ttl) {
+			this.value = value;
+			this.ttl = (ttl > 0) ? ttl : 0;
+		}
+	}
+
+	/**
+	 * 延迟写入配置
+	 */
+	static class Config {
+
+		private int size = 10000;
+		private long interval = 100;
+		private int batch = 500;
+
+		/**
+		 * 配置格式: size[, interval[, batch]]，例如 10000, 100, 500
+		 * size -> 队列中最多保留的缓存键数量
+		 * interval -> 定时写入的间隔（毫秒）
+		 * batch -> 每次批量写入的最大数量，队列中的数据达到该数量时立即写入
+		 * @param cfg config value
+		 * @return write behind config
+		 */
+		static Config parse(String cfg) {
+			Config config = new Config();
+			String[] cfgs = cfg.split(",");
+			config.size = Integer.parseInt(cfgs[0].trim());
+			if(cfgs.length > 1)
+				config.interval = Long.parseLong(cfgs[1].trim());
+			if(cfgs.length > 2)
+				config.batch = Integer.parseInt(cfgs[2].trim());
+			if(config.size <= 0 || config.interval <= 0 || config.batch <= 0)
+				throw new CacheException("Illegal write behind config: " + cfg);
+			return config;
+		}
+	}
+}
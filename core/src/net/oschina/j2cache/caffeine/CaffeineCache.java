@@ -16,11 +16,21 @@
 package net.oschina.j2cache.caffeine;
 
 import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Policy;
 import net.oschina.j2cache.Level1Cache;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * Caffeine cache
@@ -32,21 +42,78 @@ public class CaffeineCache implements Level1Cache {
     private com.github.benmanes.caffeine.cache.Cache<String, Object> cache;
     private long size ;
     private long expire ;
+    private Loader loader;
+    private Policy.VarExpiration<String, Object> expiration;
+    private double jitter;
+    //写入时单独指定的失效时间（秒），自动刷新或者提前刷新后仍然使用该失效时间，而不是区域的失效时间
+    private final Map<String, Long> ttls;
 
     public CaffeineCache(Cache<String, Object> cache, long size, long expire) {
+        this(cache, size, expire, null);
+    }
+
+    /**
+     * 支持自动刷新的 Caffeine cache
+     * @param cache caffeine cache built with refreshAfterWrite
+     * @param size max cache object size in memory
+     * @param expire cache object expire time in second
+     * @param loader the loader used by caffeine to reload data
+     */
+    public CaffeineCache(Cache<String, Object> cache, long size, long expire, Loader loader) {
+        this(cache, size, expire, loader, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * @param ttls 与 cache 的 Expiry 共用的单独指定的失效时间
+     */
+    CaffeineCache(Cache<String, Object> cache, long size, long expire, Loader loader, Map<String, Long> ttls) {
         this.cache = cache;
         this.size = size;
         this.expire = expire;
+        this.loader = loader;
+        this.ttls = ttls;
+        this.expiration = cache.policy().expireVariably().orElse(null);
     }
 
     long getSize() {
         return size;
     }
 
+    /**
+     * 按照字节数限制容量时，返回当前缓存数据的总字节数
+     */
+    @Override
+    public long weightedSize() {
+        return cache.policy().eviction()
+                .filter(Policy.Eviction::isWeighted)
+                .map(e -> e.weightedSize().orElse(-1))
+                .orElse(-1L);
+    }
+
     long getExpire() {
         return expire;
     }
 
+    /**
+     * 设置失效时间的随机缩短比例，同时写入的数据不会在同一时刻失效
+     * @param jitter 0 ~ 1
+     */
+    void setJitter(double jitter) {
+        this.jitter = jitter;
+    }
+
+    /**
+     * 按照比例随机缩短失效时间
+     * @param duration expire time
+     * @param jitter 0 ~ 1
+     * @return expire time with jitter
+     */
+    static long jitter(long duration, double jitter) {
+        if(jitter <= 0 || duration <= 0 || duration == Long.MAX_VALUE)
+            return duration;
+        return duration - (long)(duration * jitter * ThreadLocalRandom.current().nextDouble());
+    }
+
     @Override
     public Object get(String key) {
         return cache.getIfPresent(key);
@@ -59,14 +126,50 @@ public class CaffeineCache implements Level1Cache {
 
     @Override
     public void put(String key, Object value) {
+        if(!ttls.isEmpty())
+            ttls.remove(key);
         cache.put(key, value);
     }
 
     @Override
     public void put(Map<String, Object> elements) {
+        if(!ttls.isEmpty())
+            ttls.keySet().removeAll(elements.keySet());
         cache.putAll(elements);
     }
 
+    @Override
+    public void put(String key, Object value, long timeToLiveInSeconds) {
+        if(timeToLiveInSeconds > 0 && expiration != null) {
+            ttls.put(key, timeToLiveInSeconds);
+            expiration.put(key, value, jitter(TimeUnit.SECONDS.toMillis(timeToLiveInSeconds), jitter), TimeUnit.MILLISECONDS);
+        }
+        else
+            put(key, value);
+    }
+
+    @Override
+    public void put(Map<String, Object> elements, long timeToLiveInSeconds) {
+        if(timeToLiveInSeconds > 0 && expiration != null)
+            elements.forEach((k, v) -> put(k, v, timeToLiveInSeconds));
+        else
+            put(elements);
+    }
+
+    @Override
+    public long timeToLive(String key) {
+        Long ttl = ttls.get(key);
+        return (ttl != null) ? ttl : 0;
+    }
+
+    @Override
+    public long ttl(String key) {
+        if(expiration == null)
+            return -1;
+        OptionalLong ttl = expiration.getExpiresAfter(key, TimeUnit.MILLISECONDS);
+        return ttl.isPresent() ? ttl.getAsLong() : -1;
+    }
+
     @Override
     public Collection<String> keys() {
         return cache.asMap().keySet();
@@ -74,11 +177,59 @@ public class CaffeineCache implements Level1Cache {
 
     @Override
     public void evict(String...keys) {
-        cache.invalidateAll(Arrays.asList(keys));
+        List<String> list = Arrays.asList(keys);
+        cache.invalidateAll(list);
+        if(!ttls.isEmpty())
+            ttls.keySet().removeAll(list);
     }
 
     @Override
     public void clear() {
         cache.invalidateAll();
+        ttls.clear();
+    }
+
+    @Override
+    public void setLoader(Function<String, Object> loader) {
+        if(this.loader != null)
+            this.loader.function = loader;
+    }
+
+    @Override
+    public void setLoader(Function<String, Object> loader, Executor executor) {
+        if(this.loader != null) {
+            this.loader.executor = executor;
+            this.loader.function = loader;
+        }
+    }
+
+    /**
+     * 自动刷新时使用的数据加载器，没有设置加载器时保留原有数据
+     */
+    static class Loader implements CacheLoader<String, Object> {
+
+        private volatile Function<String, Object> function;
+        private volatile Executor executor;
+
+        @Override
+        public Object load(String key) {
+            Function<String, Object> function = this.function;
+            return (function != null) ? function.apply(key) : null;
+        }
+
+        @Override
+        public Object reload(String key, Object oldValue) {
+            Function<String, Object> function = this.function;
+            return (function != null) ? function.apply(key) : oldValue;
+        }
+
+        /**
+         * 在指定的线程池中重新加载，加载器中的二级缓存 I/O 不占用 Caffeine 的线程池（默认为 ForkJoinPool.commonPool）
+         */
+        @Override
+        public CompletableFuture<Object> asyncReload(String key, Object oldValue, Executor executor) {
+            Executor refresher = this.executor;
+            return CacheLoader.super.asyncReload(key, oldValue, (refresher != null) ? refresher : executor);
+        }
     }
 }
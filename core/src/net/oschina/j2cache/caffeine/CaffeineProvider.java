@@ -16,11 +16,16 @@
 package net.oschina.j2cache.caffeine;
 
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.github.benmanes.caffeine.cache.RemovalCause;
 import net.oschina.j2cache.*;
+import net.oschina.j2cache.util.ConfigUtils;
+import net.oschina.j2cache.util.SerializationUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
@@ -35,9 +40,11 @@ public class CaffeineProvider implements CacheProvider {
     private final static Logger log = LoggerFactory.getLogger(CaffeineProvider.class);
 
     private final static String PREFIX_REGION = "region.";
+    private final static String PREFIX_JITTER = "jitter.";
     private final static String DEFAULT_REGION = "default";
     private ConcurrentHashMap<String, CaffeineCache> caches = new ConcurrentHashMap<>();
     private ConcurrentHashMap<String, CacheConfig> cacheConfigs = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, Double> jitters = new ConcurrentHashMap<>();
 
     @Override
     public String name() {
@@ -65,7 +72,7 @@ public class CaffeineProvider implements CacheProvider {
                         log.info(String.format("Caffeine cache [%s] not defined, using default.", region));
                     }
 
-                    cache = buildCache(region, config.size, config.expire, listener);
+                    cache = buildCache(region, config.size, config.weighted, config.expire, config.refresh, listener);
                     caches.put(region, cache);
                 }
             }
@@ -73,31 +80,25 @@ public class CaffeineProvider implements CacheProvider {
         return cache;
     }
 
+    /**
+     * 缓存区域中的每个缓存键都可以单独指定失效时间（{@link CaffeineCache#put(String, Object, long)}），
+     * 因此已经配置或者已经创建的区域直接返回，不再校验区域的失效时间
+     */
     @Override
     public Cache buildCache(String region, long timeToLiveInSeconds, CacheExpiredListener listener) {
-        CacheConfig config = cacheConfigs.get(region);
-
-        if(config != null) { //已有配置，不再创建新的
-            if(config.expire == timeToLiveInSeconds)
-                return buildCache(region, listener);
-            else
-                throw new IllegalArgumentException(String.format("Region [%s] TTL %d not match with %d", region, config.expire, timeToLiveInSeconds));
-        }
+        if(cacheConfigs.containsKey(region)) //已有配置，不再创建新的
+            return buildCache(region, listener);
 
         CaffeineCache cache = caches.get(region);
-        if(cache != null) {
-            if(cache.getExpire() != timeToLiveInSeconds)
-                throw new IllegalArgumentException(String.format("Region [%s] TTL %d not match with %d", region, cache.getExpire(), timeToLiveInSeconds));
-        }
-        else{
+        if(cache == null) {
             synchronized (CaffeineProvider.class) {
                 cache = caches.get(region);
                 if(cache == null) {
-                    config = cacheConfigs.get(DEFAULT_REGION);
+                    CacheConfig config = cacheConfigs.get(DEFAULT_REGION);
                     if(config == null)
                         throw new CacheException(String.format("Undefined caffeine cache region name = %s", region));
 
-                    cache = buildCache(region, config.size, timeToLiveInSeconds, listener);
+                    cache = buildCache(region, config.size, config.weighted, timeToLiveInSeconds, 0, listener);
                     caches.put(region, cache);
                     log.info(String.format("Started caffeine region [%s] with TTL: %d", region, timeToLiveInSeconds));
                 }
@@ -107,24 +108,43 @@ public class CaffeineProvider implements CacheProvider {
     }
 
     /**
-     * 返回对 Caffeine cache 的 封装
+     * 返回对 Caffeine cache 的 封装，缓存数据默认在写入 expire 秒后失效，也可以单独指定每个缓存键的失效时间
      * @param region region name
      * @param size   max cache object size in memory
-     * @param expire cache object expire time in millisecond
+     * @param weighted true if size is the max bytes of all cache objects
+     * @param expire cache object expire time in second
+     * @param refresh refresh cache object after write in second, 0 means never refresh
      * @param listener  j2cache cache listener
      * @return CaffeineCache
      */
-    private CaffeineCache buildCache(String region, long size, long expire, CacheExpiredListener listener) {
-        com.github.benmanes.caffeine.cache.Cache<String, Object> loadingCache = Caffeine.newBuilder()
-                .maximumSize(size)
-                .expireAfterWrite(expire, TimeUnit.SECONDS)
+    private CaffeineCache buildCache(String region, long size, boolean weighted, long expire, long refresh, CacheExpiredListener listener) {
+        double jitter = jitters.getOrDefault(region, jitters.getOrDefault(DEFAULT_REGION, 0d));
+        Caffeine<Object, Object> builder = Caffeine.newBuilder();
+        if(weighted)
+            builder.maximumWeight(size).weigher(CaffeineProvider::weigh);
+        else
+            builder.maximumSize(size);
+        Map<String, Long> ttls = new ConcurrentHashMap<>();
+        builder.expireAfter(new VariableExpiry(expire, jitter, ttls))
                 .removalListener((k,v, cause) -> {
+                    //失效或者被淘汰的缓存数据不再记录单独指定的失效时间
+                    if(cause.wasEvicted())
+                        ttls.remove(k);
                     //程序删除的缓存不做通知处理，因为上层已经做了处理
                     if(cause != RemovalCause.EXPLICIT && cause != RemovalCause.REPLACED)
                         listener.notifyElementExpired(region, (String)k);
-                })
-                .build();
-        return new CaffeineCache(loadingCache, size, expire);
+                });
+        CaffeineCache cache;
+        if(refresh > 0) {
+            if(expire > 0 && refresh >= expire)
+                log.warn(String.format("Caffeine region [%s] refresh time %d should be less than expire time %d", region, refresh, expire));
+            CaffeineCache.Loader loader = new CaffeineCache.Loader();
+            cache = new CaffeineCache(builder.refreshAfterWrite(refresh, TimeUnit.SECONDS).build(loader), size, expire, loader, ttls);
+        }
+        else
+            cache = new CaffeineCache(builder.build(), size, expire, null, ttls);
+        cache.setJitter(jitter);
+        return cache;
     }
 
     /**
@@ -133,12 +153,25 @@ public class CaffeineProvider implements CacheProvider {
      * <li>caffeine.region.default = 10000,1h</li>
      * <li>caffeine.region.Users = 10000,1h</li>
      * <li>caffeine.region.Blogs = 80000,30m</li>
+     * <li>caffeine.region.Hots = 1000,1h,50m (refresh after write 50 minutes)</li>
+     * <li>caffeine.region.Images = 64MB,1h (max 64MB of cache objects)</li>
+     * <li>caffeine.jitter.default = 10% (expire time randomly shortened up to 10%)</li>
      * </ul>
      * @param props current configuration settings.
      */
     @Override
     public void start(Properties props) {
         for(String region : props.stringPropertyNames()) {
+            if(region.startsWith(PREFIX_JITTER)) {
+                String s_jitter = props.getProperty(region).trim();
+                double jitter = s_jitter.endsWith("%") ?
+                        Double.parseDouble(s_jitter.substring(0, s_jitter.length() - 1).trim()) / 100 : Double.parseDouble(s_jitter);
+                if(jitter < 0 || jitter >= 1)
+                    log.warn(String.format("Illegal caffeine jitter config [%s=%s]", region, s_jitter));
+                else
+                    jitters.put(region.substring(PREFIX_JITTER.length()), jitter);
+                continue ;
+            }
             if(!region.startsWith(PREFIX_REGION))
                 continue ;
             String s_config = props.getProperty(region).trim();
@@ -157,46 +190,102 @@ public class CaffeineProvider implements CacheProvider {
 
     }
 
+    /**
+     * 估算缓存数据占用的字节数：字节数组和字符串直接计算长度，其他对象使用序列化后未压缩的长度，
+     * 写入缓存时由 CacheRegion 预先计算（见 {@link SerializationUtils#hintSize(Object, int)}），不会重复序列化
+     * @param key cache key
+     * @param value cache value
+     * @return bytes of the cache object
+     */
+    private static int weigh(Object key, Object value) {
+        long bytes = ((String)key).length() * 2L;
+        if(value instanceof byte[])
+            bytes += ((byte[])value).length;
+        else if(value instanceof String)
+            bytes += ((String)value).length() * 2L;
+        else {
+            try {
+                bytes += SerializationUtils.estimateSize(value);
+            } catch (IOException e) {
+                log.warn(String.format("Failed to weigh cache object [%s], class %s", key, value.getClass().getName()), e);
+            }
+        }
+        return (int)Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 缓存数据写入时使用区域的失效时间，读取时不改变剩余的失效时间，与 expireAfterWrite 的行为一致
+     * 通过 Policy.VarExpiration 写入的数据使用单独指定的失效时间
+     * 配置了 jitter 时每次写入的失效时间随机缩短，避免同时写入的数据在同一时刻失效
+     */
+    private static class VariableExpiry implements Expiry<Object, Object> {
+
+        private final long expireNanos;
+        private final double jitter;
+        private final Map<String, Long> ttls;
+
+        VariableExpiry(long expire, double jitter, Map<String, Long> ttls) {
+            this.expireNanos = (expire > 0) ? TimeUnit.SECONDS.toNanos(expire) : Long.MAX_VALUE;
+            this.jitter = jitter;
+            this.ttls = ttls;
+        }
+
+        @Override
+        public long expireAfterCreate(Object key, Object value, long currentTime) {
+            return CaffeineCache.jitter(expireNanos, jitter);
+        }
+
+        /**
+         * 单独指定了失效时间的数据直接设置失效时间，不经过这里；使用区域失效时间写入前会清除单独指定的失效时间，
+         * 因此这里取得的单独指定的失效时间只来自自动刷新
+         */
+        @Override
+        public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+            Long ttl = ttls.get(key);
+            return CaffeineCache.jitter((ttl != null) ? TimeUnit.SECONDS.toNanos(ttl) : expireNanos, jitter);
+        }
+
+        @Override
+        public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
     /**
      * 缓存配置
      */
     private static class CacheConfig {
 
         private long size = 0L;
+        private boolean weighted;
         private long expire = 0L;
+        private long refresh = 0L;
 
         public static CacheConfig parse(String cfg) {
             CacheConfig cacheConfig = null;
             String[] cfgs = cfg.split(",");
             if(cfgs.length == 1) {
                 cacheConfig = new CacheConfig();
-                String sSize = cfgs[0].trim();
-                cacheConfig.size = Long.parseLong(sSize);
+                cacheConfig.size(cfgs[0]);
             }
-            else if(cfgs.length == 2) {
+            else if(cfgs.length == 2 || cfgs.length == 3) {
                 cacheConfig = new CacheConfig();
-                String sSize = cfgs[0].trim();
-                String sExpire = cfgs[1].trim();
-                cacheConfig.size = Long.parseLong(sSize);
-                char unit = Character.toLowerCase(sExpire.charAt(sExpire.length()-1));
-                cacheConfig.expire = Long.parseLong(sExpire.substring(0, sExpire.length() - 1));
-                switch(unit){
-                    case 's'://seconds
-                        break;
-                    case 'm'://minutes
-                        cacheConfig.expire *= 60;
-                        break;
-                    case 'h'://hours
-                        cacheConfig.expire *= 3600;
-                        break;
-                    case 'd'://days
-                        cacheConfig.expire *= 86400;
-                        break;
-                }
+                cacheConfig.size(cfgs[0]);
+                cacheConfig.expire = ConfigUtils.parseSeconds(cfgs[1]);
+                if(cfgs.length == 3)
+                    cacheConfig.refresh = ConfigUtils.parseSeconds(cfgs[2]);
             }
             return cacheConfig;
         }
 
+        /**
+         * 容量配置为数量或者字节数，例如 10000 或者 64MB
+         */
+        private void size(String sSize) {
+            this.weighted = ConfigUtils.isBytes(sSize);
+            this.size = ConfigUtils.parseBytes(sSize);
+        }
+
     }
 
 }
@@ -94,8 +94,13 @@ public class EhCache implements Level1Cache, CacheEventListener {
 	}
 
 	@Override
-	public Map get(Collection<String> keys) {
-		return cache.getAll(keys);
+	public Map<String, Object> get(Collection<String> keys) {
+		Map<String, Object> results = new HashMap<>();
+		cache.getAll(keys).forEach((k, elem) -> {
+			if(elem != null)
+				results.put((String)k, elem.getObjectValue());
+		});
+		return results;
 	}
 
 	@Override
@@ -110,6 +115,26 @@ public class EhCache implements Level1Cache, CacheEventListener {
 		cache.putAll(elems);
 	}
 
+	@Override
+	public void put(String key, Object value, long timeToLiveInSeconds) {
+		Element element = new Element(key, value);
+		if(timeToLiveInSeconds > 0)
+			element.setTimeToLive((int)timeToLiveInSeconds);
+		cache.put(element);
+	}
+
+	@Override
+	public void put(Map<String, Object> elements, long timeToLiveInSeconds) {
+		List<Element> elems = new ArrayList<>();
+		elements.forEach((k,v) -> {
+			Element element = new Element(k,v);
+			if(timeToLiveInSeconds > 0)
+				element.setTimeToLive((int)timeToLiveInSeconds);
+			elems.add(element);
+		});
+		cache.putAll(elems);
+	}
+
 	/**
 	 * Remove all elements in the cache, but leave the cache
 	 * in a useable state.
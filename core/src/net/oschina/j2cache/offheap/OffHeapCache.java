@@ -0,0 +1,520 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache.offheap;
+
+import net.oschina.j2cache.CacheException;
+import net.oschina.j2cache.CacheExpiredListener;
+import net.oschina.j2cache.Level1Cache;
+import net.oschina.j2cache.util.SerializationUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>堆外内存缓存，缓存数据序列化后保存在 direct ByteBuffer 中，堆内只保留缓存键的索引，读取时反序列化</p>
+ * <p>缓存区域按照缓存键分为多个段，每个段独立加锁；段内的内存按页分配，每页划分为相同大小的块，
+ * 与 memcached 的 slab 分配方式相同，每种大小的块按照 LRU 淘汰</p>
+ * <p>超过页大小的缓存数据不会被缓存；指定目录时内存页使用内存映射文件，可以作为一级缓存和二级缓存之间的本地磁盘缓存</p>
+ *
+ * @author Winter Lau(javayou@gmail.com)
+ */
+public class OffHeapCache implements Level1Cache {
+
+    //最小的块大小，相邻两种块大小的比例
+    private final static int MIN_CHUNK_SIZE = 64;
+    private final static double CHUNK_GROWTH_FACTOR = 1.25;
+
+    private final String region;
+    private final long expire;
+    private final CacheExpiredListener listener;
+    private final Segment[] segments;
+
+    /**
+     * 缓存构造
+     * @param region region name
+     * @param capacity max bytes of off-heap memory
+     * @param pageSize bytes of each memory page, also the max bytes of a cache object
+     * @param segments number of segments
+     * @param expire cache object expire time in second, 0 means never expire
+     * @param listener j2cache cache listener
+     */
+    public OffHeapCache(String region, long capacity, int pageSize, int segments, long expire, CacheExpiredListener listener) {
+        this(region, capacity, pageSize, segments, expire, listener, null);
+    }
+
+    /**
+     * 使用内存映射文件保存缓存数据，每个段对应 dir 目录下的一个文件，已有的文件会被覆盖
+     * @param region region name
+     * @param capacity max bytes of off-heap memory
+     * @param pageSize bytes of each memory page, also the max bytes of a cache object
+     * @param segments number of segments
+     * @param expire cache object expire time in second, 0 means never expire
+     * @param listener j2cache cache listener
+     * @param dir directory of memory-mapped files, null to use direct memory
+     */
+    public OffHeapCache(String region, long capacity, int pageSize, int segments, long expire, CacheExpiredListener listener, File dir) {
+        this.region = region;
+        this.expire = expire;
+        this.listener = listener;
+        this.segments = new Segment[segments];
+        long segmentCapacity = capacity / segments;
+        int segmentPageSize = (int)Math.min(pageSize, segmentCapacity);
+        if(segmentPageSize < MIN_CHUNK_SIZE)
+            throw new CacheException(String.format("Off-heap region [%s] capacity %d is too small", region, capacity));
+        for(int i = 0; i < segments; i++) {
+            File file = (dir != null) ? new File(dir, region + "-" + i + ".dat") : null;
+            if(file != null && file.exists() && !file.delete())
+                throw new CacheException("Failed to delete " + file);
+            this.segments[i] = new Segment(segmentPageSize, (int)(segmentCapacity / segmentPageSize), file);
+        }
+    }
+
+    long getExpire() {
+        return expire;
+    }
+
+    private Segment segment(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[(h & 0x7fffffff) % segments.length];
+    }
+
+    /**
+     * 通知失效和被淘汰的缓存数据
+     */
+    private void notifyExpired(List<String> keys) {
+        for(String key : keys)
+            listener.notifyElementExpired(region, key);
+    }
+
+    @Override
+    public Object get(String key) {
+        List<String> expired = new ArrayList<>(0);
+        byte[] bytes = segment(key).read(key, System.currentTimeMillis(), expired);
+        notifyExpired(expired);
+        try {
+            return (bytes != null) ? SerializationUtils.deserialize(bytes) : null;
+        } catch (IOException e) {
+            throw new CacheException(e);
+        }
+    }
+
+    @Override
+    public Map<String, Object> get(Collection<String> keys) {
+        Map<String, Object> results = new HashMap<>();
+        for(String key : keys) {
+            Object value = get(key);
+            if(value != null)
+                results.put(key, value);
+        }
+        return results;
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return ttl(key) != -1;
+    }
+
+    @Override
+    public void put(String key, Object value) {
+        put(key, value, expire);
+    }
+
+    @Override
+    public void put(String key, Object value, long timeToLiveInSeconds) {
+        if(timeToLiveInSeconds <= 0)
+            timeToLiveInSeconds = expire;
+        byte[] bytes;
+        try {
+            bytes = SerializationUtils.serialize(value);
+        } catch (IOException e) {
+            throw new CacheException(e);
+        }
+        long expireAt = (timeToLiveInSeconds > 0) ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeToLiveInSeconds) : 0;
+        List<String> evicted = new ArrayList<>(0);
+        segment(key).write(key, bytes, expireAt, evicted);
+        notifyExpired(evicted);
+    }
+
+    @Override
+    public void put(Map<String, Object> elements, long timeToLiveInSeconds) {
+        elements.forEach((k, v) -> put(k, v, timeToLiveInSeconds));
+    }
+
+    @Override
+    public long ttl(String key) {
+        return segment(key).ttl(key, System.currentTimeMillis());
+    }
+
+    /**
+     * 返回所有缓存数据序列化后的总字节数
+     */
+    @Override
+    public long weightedSize() {
+        long size = 0;
+        for(Segment segment : segments)
+            size += segment.usedBytes();
+        return size;
+    }
+
+    @Override
+    public Collection<String> keys() {
+        long now = System.currentTimeMillis();
+        List<String> keys = new ArrayList<>();
+        for(Segment segment : segments)
+            segment.keys(now, keys);
+        return keys;
+    }
+
+    @Override
+    public void evict(String...keys) {
+        for(String key : keys)
+            segment(key).remove(key);
+    }
+
+    @Override
+    public void clear() {
+        for(Segment segment : segments)
+            segment.clear();
+    }
+
+    /**
+     * 清除已经失效的缓存数据并通知
+     */
+    void expire() {
+        long now = System.currentTimeMillis();
+        for(Segment segment : segments) {
+            List<String> expired = new ArrayList<>(0);
+            segment.expire(now, expired);
+            notifyExpired(expired);
+        }
+    }
+
+    /**
+     * 缓存段，管理一组内存页以及保存在这些内存页中的缓存数据
+     */
+    private static class Segment {
+
+        private final int pageSize;
+        private final int maxPages;
+        private final File file;
+        private final List<ByteBuffer> pages = new ArrayList<>();
+        private final ArrayDeque<Integer> freePages = new ArrayDeque<>();
+        private final SizeClass[] classes;
+        private final HashMap<String, Entry> entries = new HashMap<>();
+        private long usedBytes;
+
+        Segment(int pageSize, int maxPages, File file) {
+            this.pageSize = pageSize;
+            this.maxPages = Math.max(1, maxPages);
+            this.file = file;
+            List<SizeClass> classes = new ArrayList<>();
+            for(int size = MIN_CHUNK_SIZE; size < pageSize; size = Math.max(size + 8, (int)(size * CHUNK_GROWTH_FACTOR) & ~7))
+                classes.add(new SizeClass(size));
+            classes.add(new SizeClass(pageSize));
+            this.classes = classes.toArray(new SizeClass[classes.size()]);
+        }
+
+        synchronized byte[] read(String key, long now, List<String> expired) {
+            Entry entry = entries.get(key);
+            if(entry == null)
+                return null;
+            if(entry.isExpired(now)) {
+                remove(entry);
+                expired.add(key);
+                return null;
+            }
+            entry.sizeClass.touch(entry);
+            byte[] bytes = new byte[entry.length];
+            ByteBuffer buffer = pages.get(entry.page).duplicate();
+            buffer.position(entry.offset);
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        synchronized void write(String key, byte[] bytes, long expireAt, List<String> evicted) {
+            Entry old = entries.get(key);
+            if(old != null)
+                remove(old);
+            SizeClass sizeClass = sizeClassOf(bytes.length);
+            if(sizeClass == null)
+                return; //超过页大小，不缓存
+            long chunk = allocate(sizeClass, evicted);
+            if(chunk < 0)
+                return;
+            Entry entry = new Entry(key, sizeClass, (int)(chunk >>> 32), (int)chunk, bytes.length, expireAt);
+            ByteBuffer buffer = pages.get(entry.page).duplicate();
+            buffer.position(entry.offset);
+            buffer.put(bytes);
+            entries.put(key, entry);
+            sizeClass.link(entry);
+            usedBytes += bytes.length;
+        }
+
+        synchronized long ttl(String key, long now) {
+            Entry entry = entries.get(key);
+            if(entry == null || entry.isExpired(now))
+                return -1;
+            return (entry.expireAt > 0) ? entry.expireAt - now : Long.MAX_VALUE;
+        }
+
+        synchronized void remove(String key) {
+            Entry entry = entries.get(key);
+            if(entry != null)
+                remove(entry);
+        }
+
+        synchronized void keys(long now, List<String> keys) {
+            entries.forEach((k, v) -> {
+                if(!v.isExpired(now))
+                    keys.add(k);
+            });
+        }
+
+        synchronized void expire(long now, List<String> expired) {
+            Iterator<Entry> it = entries.values().iterator();
+            while(it.hasNext()) {
+                Entry entry = it.next();
+                if(entry.isExpired(now)) {
+                    it.remove();
+                    release(entry);
+                    expired.add(entry.key);
+                }
+            }
+        }
+
+        /**
+         * 清除所有缓存数据，内存页保留并重新分配
+         */
+        synchronized void clear() {
+            entries.clear();
+            for(SizeClass sizeClass : classes)
+                sizeClass.reset();
+            freePages.clear();
+            for(int i = 0; i < pages.size(); i++)
+                freePages.add(i);
+            usedBytes = 0;
+        }
+
+        synchronized long usedBytes() {
+            return usedBytes;
+        }
+
+        private SizeClass sizeClassOf(int length) {
+            for(SizeClass sizeClass : classes)
+                if(sizeClass.chunkSize >= length)
+                    return sizeClass;
+            return null;
+        }
+
+        private void remove(Entry entry) {
+            entries.remove(entry.key);
+            release(entry);
+        }
+
+        private void release(Entry entry) {
+            entry.sizeClass.unlink(entry);
+            entry.sizeClass.free(entry.page, entry.offset);
+            usedBytes -= entry.length;
+        }
+
+        /**
+         * 分配一个块：优先使用空闲的块，其次分配新的内存页，内存已满时淘汰该大小最久未使用的数据，
+         * 该大小没有可以淘汰的数据时，从内存页最多的其他大小中回收一页
+         * @return page << 32 | offset, -1 if no memory
+         */
+        private long allocate(SizeClass sizeClass, List<String> evicted) {
+            if(sizeClass.hasFree())
+                return sizeClass.allocate();
+            int page = newPage();
+            if(page < 0 && sizeClass.tail != null) {
+                Entry victim = sizeClass.tail;
+                remove(victim);
+                evicted.add(victim.key);
+                return sizeClass.allocate();
+            }
+            if(page < 0)
+                page = reclaimPage(sizeClass, evicted);
+            if(page < 0)
+                return -1;
+            sizeClass.addPage(page, pageSize);
+            return sizeClass.allocate();
+        }
+
+        private int newPage() {
+            Integer page = freePages.poll();
+            if(page != null)
+                return page;
+            if(pages.size() >= maxPages)
+                return -1;
+            pages.add((file != null) ? map(pages.size()) : ByteBuffer.allocateDirect(pageSize));
+            return pages.size() - 1;
+        }
+
+        /**
+         * 将文件中的一页映射到内存，文件长度不够时自动扩展
+         */
+        private ByteBuffer map(int page) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, (long)page * pageSize, pageSize);
+            } catch (IOException e) {
+                throw new CacheException("Failed to map " + file, e);
+            }
+        }
+
+        private int reclaimPage(SizeClass target, List<String> evicted) {
+            SizeClass donor = null;
+            for(SizeClass sizeClass : classes)
+                if(sizeClass != target && sizeClass.pages > 0 && (donor == null || sizeClass.pages > donor.pages))
+                    donor = sizeClass;
+            if(donor == null)
+                return -1;
+            //回收最久未使用的数据所在的页
+            int page = (donor.tail != null) ? donor.tail.page : (int)(donor.peekFree() >>> 32);
+            for(Entry entry = donor.head; entry != null; ) {
+                Entry next = entry.next;
+                if(entry.page == page) {
+                    remove(entry);
+                    evicted.add(entry.key);
+                }
+                entry = next;
+            }
+            donor.removePage(page);
+            return page;
+        }
+    }
+
+    /**
+     * 相同大小的块，空闲的块保存在栈中，已经使用的块按照访问顺序组成双向链表
+     */
+    private static class SizeClass {
+
+        private final int chunkSize;
+        private long[] free = new long[16];
+        private int freeCount;
+        private int pages;
+        private Entry head;
+        private Entry tail;
+
+        SizeClass(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        boolean hasFree() {
+            return freeCount > 0;
+        }
+
+        long allocate() {
+            return free[--freeCount];
+        }
+
+        long peekFree() {
+            return free[freeCount - 1];
+        }
+
+        void free(int page, int offset) {
+            if(freeCount == free.length)
+                free = Arrays.copyOf(free, free.length * 2);
+            free[freeCount++] = ((long)page << 32) | offset;
+        }
+
+        void addPage(int page, int pageSize) {
+            for(int offset = pageSize / chunkSize * chunkSize - chunkSize; offset >= 0; offset -= chunkSize)
+                free(page, offset);
+            pages++;
+        }
+
+        /**
+         * 回收内存页，该页中的数据已经全部删除
+         */
+        void removePage(int page) {
+            int count = 0;
+            for(int i = 0; i < freeCount; i++)
+                if((int)(free[i] >>> 32) != page)
+                    free[count++] = free[i];
+            freeCount = count;
+            pages--;
+        }
+
+        void reset() {
+            freeCount = 0;
+            pages = 0;
+            head = tail = null;
+        }
+
+        void link(Entry entry) {
+            entry.prev = null;
+            entry.next = head;
+            if(head != null)
+                head.prev = entry;
+            head = entry;
+            if(tail == null)
+                tail = entry;
+        }
+
+        void unlink(Entry entry) {
+            if(entry.prev != null)
+                entry.prev.next = entry.next;
+            else
+                head = entry.next;
+            if(entry.next != null)
+                entry.next.prev = entry.prev;
+            else
+                tail = entry.prev;
+            entry.prev = entry.next = null;
+        }
+
+        void touch(Entry entry) {
+            if(head != entry) {
+                unlink(entry);
+                link(entry);
+            }
+        }
+    }
+
+    /**
+     * 缓存数据的索引
+     */
+    private static class Entry {
+
+        private final String key;
+        private final SizeClass sizeClass;
+        private final int page;
+        private final int offset;
+        private final int length;
+        private final long expireAt;
+        private Entry prev;
+        private Entry next;
+
+        Entry(String key, SizeClass sizeClass, int page, int offset, int length, long expireAt) {
+            this.key = key;
+            this.sizeClass = sizeClass;
+            this.page = page;
+            this.offset = offset;
+            this.length = length;
+            this.expireAt = expireAt;
+        }
+
+        boolean isExpired(long now) {
+            return expireAt > 0 && expireAt <= now;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache.offheap;
+
+import net.oschina.j2cache.*;
+import net.oschina.j2cache.util.ConfigUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 堆外内存缓存提供者，缓存数据保存在 JVM 堆外，适用于容量很大的一级缓存
+ * 堆外内存总量受 -XX:MaxDirectMemorySize 限制
+ *
+ * @author Winter Lau(javayou@gmail.com)
+ */
+public class OffHeapCacheProvider implements CacheProvider {
+
+    private final static Logger log = LoggerFactory.getLogger(OffHeapCacheProvider.class);
+
+    private final static String PREFIX_REGION = "region.";
+    private final static String DEFAULT_REGION = "default";
+
+    //定时清除失效数据的间隔（秒）
+    private final static long EXPIRE_INTERVAL = 60;
+
+    private final static ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "j2cache-offheap-cleaner");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private ConcurrentHashMap<String, OffHeapCache> caches = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, CacheConfig> cacheConfigs = new ConcurrentHashMap<>();
+    private int pageSize = 4 * 1024 * 1024;
+    private int segments = 16;
+    private ScheduledFuture<?> expireTask;
+
+    @Override
+    public String name() {
+        return "offheap";
+    }
+
+    @Override
+    public int level() {
+        return CacheObject.LEVEL_1;
+    }
+
+    @Override
+    public Cache buildCache(String region, CacheExpiredListener listener) {
+        CacheConfig config = cacheConfigs.get(region);
+        if(config == null) {
+            config = cacheConfigs.get(DEFAULT_REGION);
+            if(config == null)
+                throw new CacheException(String.format("Undefined off-heap cache region name = %s", region));
+        }
+        return buildCache(region, config.capacity, config.expire, listener);
+    }
+
+    /**
+     * 缓存区域中的每个缓存键都可以单独指定失效时间，已经配置或者已经创建的区域直接返回
+     */
+    @Override
+    public Cache buildCache(String region, long timeToLiveInSeconds, CacheExpiredListener listener) {
+        if(cacheConfigs.containsKey(region))
+            return buildCache(region, listener);
+        CacheConfig config = cacheConfigs.get(DEFAULT_REGION);
+        if(config == null)
+            throw new CacheException(String.format("Undefined off-heap cache region name = %s", region));
+        return buildCache(region, config.capacity, timeToLiveInSeconds, listener);
+    }
+
+    private OffHeapCache buildCache(String region, long capacity, long expire, CacheExpiredListener listener) {
+        return caches.computeIfAbsent(region, r -> {
+            log.info(String.format("Started off-heap region [%s] with capacity: %d bytes, TTL: %d", r, capacity, expire));
+            return new OffHeapCache(r, capacity, pageSize, segments, expire, listener);
+        });
+    }
+
+    /**
+     * <p>配置示例</p>
+     * <ul>
+     * <li>offheap.region.default = 256MB, 1h</li>
+     * <li>offheap.region.Users = 2GB, 30m</li>
+     * <li>offheap.page_size = 4MB (max bytes of a cache object)</li>
+     * <li>offheap.segments = 16</li>
+     * </ul>
+     * @param props current configuration settings.
+     */
+    @Override
+    public void start(Properties props) {
+        this.pageSize = (int)ConfigUtils.parseBytes(props.getProperty("page_size", "4MB"));
+        this.segments = Integer.parseInt(props.getProperty("segments", "16").trim());
+        for(String region : props.stringPropertyNames()) {
+            if(!region.startsWith(PREFIX_REGION))
+                continue;
+            String s_config = props.getProperty(region).trim();
+            region = region.substring(PREFIX_REGION.length());
+            String[] cfgs = s_config.split(",");
+            CacheConfig cfg = new CacheConfig();
+            cfg.capacity = ConfigUtils.parseBytes(cfgs[0]);
+            if(cfgs.length > 1)
+                cfg.expire = ConfigUtils.parseSeconds(cfgs[1]);
+            cacheConfigs.put(region, cfg);
+        }
+        this.expireTask = cleaner.scheduleWithFixedDelay(() -> caches.values().forEach(OffHeapCache::expire),
+                EXPIRE_INTERVAL, EXPIRE_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if(expireTask != null)
+            expireTask.cancel(false);
+        caches.values().forEach(OffHeapCache::clear);
+        caches.clear();
+    }
+
+    /**
+     * 缓存配置
+     */
+    private static class CacheConfig {
+
+        private long capacity;
+        private long expire;
+    }
+}
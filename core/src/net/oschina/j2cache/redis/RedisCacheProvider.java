@@ -16,6 +16,8 @@
 package net.oschina.j2cache.redis;
 
 import net.oschina.j2cache.*;
+import net.oschina.j2cache.util.ConfigUtils;
+import net.oschina.j2cache.util.ZstdDictionaries;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.*;
@@ -34,9 +36,18 @@ public class RedisCacheProvider implements CacheProvider {
 
     private final static Logger log = LoggerFactory.getLogger(RedisCacheProvider.class);
 
+    /**
+     * 遍历缓存键时每次 SCAN/HSCAN 读取的默认数量
+     */
+    public final static int DEFAULT_SCAN_COUNT = 1000;
+
     private RedisClient redisClient;
     private String namespace;
     private String storage;
+    private int scanCount;
+    private int clearRate;
+    private long generationRefresh;
+    private ZstdDictionaryTrainer dictionaryTrainer;
     protected ConcurrentHashMap<String, Cache> caches = new ConcurrentHashMap<>();
 
     @Override
@@ -61,6 +72,9 @@ public class RedisCacheProvider implements CacheProvider {
     public void start(Properties props) {
         this.namespace = props.getProperty("namespace");
         this.storage = props.getProperty("storage");
+        this.scanCount = Integer.parseInt(props.getProperty("scan_count", String.valueOf(DEFAULT_SCAN_COUNT)));
+        this.clearRate = Integer.parseInt(props.getProperty("clear_rate", "0"));
+        this.generationRefresh = Long.parseLong(props.getProperty("generation_refresh", String.valueOf(RedisGenerationCache.DEFAULT_REFRESH_INTERVAL)));
 
         JedisPoolConfig poolConfig = newPoolConfig(props);
 
@@ -77,11 +91,23 @@ public class RedisCacheProvider implements CacheProvider {
                 .database(database)
                 .poolConfig(poolConfig).newClient();
 
+        Properties dictProps = ConfigUtils.getProperties(props, "zstd_dict.");
+        if (!dictProps.isEmpty()) {
+            this.dictionaryTrainer = new ZstdDictionaryTrainer(namespace, redisClient, dictProps);
+            ZstdDictionaries.enable(dictionaryTrainer::load);
+        }
+
         log.info(String.format("Redis client starts with mode(%s), db(%d), storage(%s), namespace(%s)", mode, database, storage, namespace));
     }
 
     @Override
     public void stop() {
+        if (dictionaryTrainer != null)
+            dictionaryTrainer.stop();
+        caches.values().forEach(cache -> {
+            if (cache instanceof RedisGenerationCache)
+                ((RedisGenerationCache) cache).stop();
+        });
         caches.clear();
         try {
             redisClient.close();
@@ -97,10 +123,14 @@ public class RedisCacheProvider implements CacheProvider {
             synchronized(RedisCacheProvider.class) {
                 if(cache == null) {
                     if("hash".equalsIgnoreCase(this.storage))
-                        cache = new RedisHashCache(this.namespace, region, redisClient);
+                        cache = new RedisHashCache(this.namespace, region, redisClient, scanCount);
+                    else if("generation".equalsIgnoreCase(this.storage))
+                        cache = new RedisGenerationCache(this.namespace, region, redisClient, scanCount, clearRate, generationRefresh);
                     else
-                        cache = new RedisGenericCache(this.namespace, region, redisClient);
+                        cache = new RedisGenericCache(this.namespace, region, redisClient, scanCount, clearRate);
                     caches.put(region, cache);
+                    if (dictionaryTrainer != null)
+                        dictionaryTrainer.start(region, (Level2Cache) cache);
                 }
             }
         }
@@ -28,6 +28,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.function.Function;
 
 /**
  * <p>封装各种模式的 Redis 客户端成统一接口</p>
@@ -250,6 +251,130 @@ public class RedisClient implements Closeable {
         }
     }
 
+    /**
+     * 使用 SCAN 命令遍历所有节点中匹配的 key，每次只从一个节点读取一批数据，不会阻塞 Redis 也不会一次性读取所有的 key
+     * 集群模式只遍历主节点，分片模式遍历所有分片
+     * 遍历期间新增或者删除的 key 可能被遗漏，同一个 key 也可能被返回多次（SCAN 命令的特性）
+     * @param pattern key 匹配规则，例如 region:*
+     * @param count 每次读取的数量
+     * @return key 的迭代器
+     */
+    public Iterator<byte[]> scan(byte[] pattern, int count) {
+        ScanParams params = new ScanParams().match(pattern).count(count);
+        List<Function<byte[], ScanResult<byte[]>>> pages = new ArrayList<>();
+        for (Node node : nodes())
+            pages.add(cursor -> node.execute(jedis -> jedis.scan(cursor, params)));
+        return new ScanIterator<>(pages);
+    }
+
+    /**
+     * 返回保存数据的所有节点：单机和哨兵模式只有一个节点，分片模式为所有分片，集群模式为所有主节点
+     * @return redis nodes
+     */
+    List<Node> nodes() {
+        List<Node> nodes = new ArrayList<>();
+        if (cluster != null) {
+            for (JedisPool pool : cluster.getClusterNodes().values()) {
+                try (Jedis jedis = pool.getResource()) {
+                    if (!jedis.info("replication").contains("role:master"))
+                        continue;
+                }
+                nodes.add(new Node() {
+                    @Override
+                    <T> T execute(Function<Jedis, T> action) {
+                        try (Jedis jedis = pool.getResource()) {
+                            return action.apply(jedis);
+                        }
+                    }
+                });
+            }
+        }
+        else if (single != null || sentinel != null) {
+            nodes.add(new Node() {
+                @Override
+                <T> T execute(Function<Jedis, T> action) {
+                    try (Jedis jedis = (single != null) ? single.getResource() : sentinel.getResource()) {
+                        return action.apply(jedis);
+                    }
+                }
+            });
+        }
+        else if (sharded != null) {
+            int shards;
+            try (ShardedJedis jedis = sharded.getResource()) {
+                shards = jedis.getAllShards().size();
+            }
+            for (int i = 0; i < shards; i++) {
+                int index = i;
+                nodes.add(new Node() {
+                    @Override
+                    <T> T execute(Function<Jedis, T> action) {
+                        //分片中的连接由 ShardedJedis 统一归还
+                        try (ShardedJedis jedis = sharded.getResource()) {
+                            return action.apply(new ArrayList<>(jedis.getAllShards()).get(index));
+                        }
+                    }
+                });
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * 一个 Redis 节点，每次执行操作时从连接池中获取连接，执行完成后归还
+     */
+    static abstract class Node {
+
+        /**
+         * 使用该节点的连接执行操作
+         * @param action redis operation
+         * @param <T> result type
+         * @return operation result
+         */
+        abstract <T> T execute(Function<Jedis, T> action);
+    }
+
+    /**
+     * 依次遍历多个节点的 SCAN/HSCAN 结果，读取完一批数据后才读取下一批
+     * @param <T> scan result type
+     */
+    static class ScanIterator<T> implements Iterator<T> {
+
+        private final Iterator<Function<byte[], ScanResult<T>>> nodes;
+        private Function<byte[], ScanResult<T>> node;
+        private byte[] cursor;
+        private Iterator<T> page = Collections.emptyIterator();
+
+        ScanIterator(List<Function<byte[], ScanResult<T>>> nodes) {
+            this.nodes = nodes.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!page.hasNext()) {
+                if (node == null) {
+                    if (!nodes.hasNext())
+                        return false;
+                    node = nodes.next();
+                    cursor = ScanParams.SCAN_POINTER_START_BINARY;
+                }
+                ScanResult<T> result = node.apply(cursor);
+                page = result.getResult().iterator();
+                cursor = result.getCursorAsBytes();
+                if (Arrays.equals(cursor, ScanParams.SCAN_POINTER_START_BINARY))
+                    node = null; //该节点已经遍历完成
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return page.next();
+        }
+    }
+
     @Override
     public void close() throws IOException {
         if(single != null)
@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis 缓存操作封装，基于 region:g[generation]:_key 实现多个 Region 的缓存
+ * 每个 region 在 Redis 中保存一个代数（region:generation），清除 region 时只需要 INCR 代数并广播，
+ * 旧代数的缓存数据不再被读取，由后台线程分批删除或者等待失效
+ * 除了收到清除广播时读取最新的代数，还会定期从 Redis 读取代数，避免丢失广播的节点一直使用旧的代数
+ * @author Winter Lau(javayou@gmail.com)
+ */
+public class RedisGenerationCache extends RedisGenericCache {
+
+    private final static Logger log = LoggerFactory.getLogger(RedisGenerationCache.class);
+
+    /**
+     * 定期读取代数的默认间隔（毫秒）
+     */
+    public final static long DEFAULT_REFRESH_INTERVAL = 1000;
+
+    //所有区域共用的定期读取代数的线程
+    private final static ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "j2cache-redis-generation");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private byte[] generationKey;
+    private volatile long generation = -1;
+    private volatile byte[] generationPrefix;
+    //定期读取代数的任务，关闭时取消
+    private final ScheduledFuture<?> refreshing;
+
+    /**
+     * 缓存构造
+     * @param namespace 命名空间，用于在多个实例中避免 _key 的重叠
+     * @param region 缓存区域的名称
+     * @param client 缓存客户端接口
+     * @param scanCount 遍历缓存键时每次 SCAN 读取的数量
+     * @param clearRate 删除旧代数的缓存数据时每个节点每秒最多删除的数量，小于等于 0 表示不限制
+     */
+    public RedisGenerationCache(String namespace, String region, RedisClient client, int scanCount, int clearRate) {
+        this(namespace, region, client, scanCount, clearRate, DEFAULT_REFRESH_INTERVAL);
+    }
+
+    /**
+     * 缓存构造
+     * @param namespace 命名空间，用于在多个实例中避免 _key 的重叠
+     * @param region 缓存区域的名称
+     * @param client 缓存客户端接口
+     * @param scanCount 遍历缓存键时每次 SCAN 读取的数量
+     * @param clearRate 删除旧代数的缓存数据时每个节点每秒最多删除的数量，小于等于 0 表示不限制
+     * @param refreshInterval 定期从 Redis 读取代数的间隔（毫秒），小于等于 0 表示只在收到清除广播时读取
+     */
+    public RedisGenerationCache(String namespace, String region, RedisClient client, int scanCount, int clearRate, long refreshInterval) {
+        super(namespace, region, client, scanCount, clearRate);
+        this.generationKey = (this.region + ":generation").getBytes();
+        onClear();
+        this.refreshing = (refreshInterval <= 0) ? null : refresher.scheduleWithFixedDelay(() -> {
+            try {
+                onClear();
+            } catch (Exception e) {
+                log.warn("Failed to refresh generation of region " + this.region, e);
+            }
+        }, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止定期读取代数，关闭 Redis 连接前调用
+     */
+    public void stop() {
+        if (refreshing != null)
+            refreshing.cancel(false);
+    }
+
+    @Override
+    protected byte[] keyPrefix() {
+        return generationPrefix;
+    }
+
+    /**
+     * 当前的代数
+     * @return region generation
+     */
+    public long generation() {
+        return generation;
+    }
+
+    /**
+     * 切换到新的代数，代数只增不减，避免延迟的广播使代数回退
+     */
+    private synchronized void generation(long generation) {
+        if (generation > this.generation) {
+            this.generationPrefix = (this.region + ":g" + generation + ":").getBytes();
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * 其他节点清除了缓存区域或者定期检查时，从 Redis 读取最新的代数
+     */
+    @Override
+    public void onClear() {
+        byte[] bytes;
+        try {
+            bytes = client.get().get(generationKey);
+        } finally {
+            client.release();
+        }
+        generation((bytes != null) ? Long.parseLong(new String(bytes)) : 0);
+    }
+
+    /**
+     * 使用 INCR 切换到新的代数，并在后台删除上一代的缓存数据
+     */
+    @Override
+    public void clear() {
+        long generation;
+        try {
+            generation = client.get().incr(generationKey);
+        } finally {
+            client.release();
+        }
+        generation(generation);
+        clearAsync((this.region + ":g" + (generation - 1) + ":*").getBytes());
+    }
+
+    /**
+     * 切换代数只需要一个 Redis 命令，直接同步执行
+     */
+    @Override
+    public CompletableFuture<Void> clearAsync() {
+        clear();
+        return CompletableFuture.completedFuture(null);
+    }
+}
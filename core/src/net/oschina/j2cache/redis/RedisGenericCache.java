@@ -2,10 +2,32 @@ package net.oschina.j2cache.redis;
 
 import net.oschina.j2cache.CacheException;
 import net.oschina.j2cache.Level2Cache;
+import net.oschina.j2cache.util.SerializationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import redis.clients.jedis.BinaryJedisCommands;
-import redis.clients.jedis.MultiKeyCommands;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.MultiKeyBinaryCommands;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.ShardedJedis;
+import redis.clients.jedis.ShardedJedisPipeline;
+import redis.clients.jedis.exceptions.JedisDataException;
 
-import java.util.Collection;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Redis 缓存操作封装，基于 region+_key 实现多个 Region 的缓存（
@@ -13,9 +35,27 @@ import java.util.Collection;
  */
 public class RedisGenericCache implements Level2Cache {
 
+    private final static Logger log = LoggerFactory.getLogger(RedisGenericCache.class);
+
+    //清除缓存区域的后台线程，每个节点使用一个线程并行清除
+    private final static ExecutorService clearExecutor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "j2cache-redis-clear");
+        t.setDaemon(true);
+        return t;
+    });
+
+    //Redis 4.0 以上使用 UNLINK 在后台线程中释放内存，低版本使用 DEL
+    private final static byte[] UNLINK_SCRIPT = ("local ok, n = pcall(redis.call, 'UNLINK', KEYS[1]) " +
+            "if ok then return n end " +
+            "return redis.call('DEL', KEYS[1])").getBytes();
+
     private String namespace;
-    private String region;
-    private RedisClient client;
+    protected String region;
+    protected String regionName; //不含命名空间的区域名称，用于读取区域的压缩配置
+    private byte[] regionPrefix;
+    protected RedisClient client;
+    private int scanCount;
+    private int clearRate;
 
     /**
      * 缓存构造
@@ -24,12 +64,39 @@ public class RedisGenericCache implements Level2Cache {
      * @param client 缓存客户端接口
      */
     public RedisGenericCache(String namespace, String region, RedisClient client) {
+        this(namespace, region, client, RedisCacheProvider.DEFAULT_SCAN_COUNT);
+    }
+
+    /**
+     * 缓存构造
+     * @param namespace 命名空间，用于在多个实例中避免 _key 的重叠
+     * @param region 缓存区域的名称
+     * @param client 缓存客户端接口
+     * @param scanCount 遍历缓存键时每次 SCAN 读取的数量
+     */
+    public RedisGenericCache(String namespace, String region, RedisClient client, int scanCount) {
+        this(namespace, region, client, scanCount, 0);
+    }
+
+    /**
+     * 缓存构造
+     * @param namespace 命名空间，用于在多个实例中避免 _key 的重叠
+     * @param region 缓存区域的名称
+     * @param client 缓存客户端接口
+     * @param scanCount 遍历缓存键时每次 SCAN 读取的数量
+     * @param clearRate 清除缓存区域时每个节点每秒最多删除的数量，小于等于 0 表示不限制
+     */
+    public RedisGenericCache(String namespace, String region, RedisClient client, int scanCount, int clearRate) {
         if (region == null || region.isEmpty())
             region = "_"; // 缺省region
 
         this.client = client;
         this.namespace = namespace;
         this.region = _regionName(region);
+        this.regionName = region;
+        this.regionPrefix = (this.region + ":").getBytes();
+        this.scanCount = scanCount;
+        this.clearRate = clearRate;
     }
 
     /**
@@ -45,8 +112,35 @@ public class RedisGenericCache implements Level2Cache {
         return region;
     }
 
+    /**
+     * 缓存键在 Redis 中的前缀
+     * @return region 前缀，即 region:
+     */
+    protected byte[] keyPrefix() {
+        return regionPrefix;
+    }
+
+    /**
+     * 使用预先计算的 region 前缀拼接缓存键，避免每次都创建中间字符串
+     * @param key cache key
+     * @return redis key
+     */
     private byte[] _key(String key) {
-        return (this.region + ":" + key).getBytes();
+        byte[] prefix = keyPrefix();
+        byte[] keyBytes = key.getBytes();
+        byte[] bytes = new byte[prefix.length + keyBytes.length];
+        System.arraycopy(prefix, 0, bytes, 0, prefix.length);
+        System.arraycopy(keyBytes, 0, bytes, prefix.length, keyBytes.length);
+        return bytes;
+    }
+
+    /**
+     * 匹配该前缀下所有缓存键的 SCAN 规则
+     */
+    private static byte[] _pattern(byte[] prefix) {
+        byte[] pattern = Arrays.copyOf(prefix, prefix.length + 1);
+        pattern[prefix.length] = '*';
+        return pattern;
     }
 
     @Override
@@ -58,37 +152,259 @@ public class RedisGenericCache implements Level2Cache {
         }
     }
 
+    /**
+     * 单机和哨兵模式使用 MGET，分片模式使用 pipeline，集群模式下由于 key 分布在不同的 slot 只能逐个读取
+     */
+    @Override
+    public Map<String, byte[]> getBytes(Collection<String> keys) {
+        Map<String, byte[]> results = new HashMap<>();
+        if (keys.isEmpty())
+            return results;
+        String[] keyArray = keys.toArray(new String[keys.size()]);
+        try {
+            BinaryJedisCommands cmd = client.get();
+            List<byte[]> values;
+            if (cmd instanceof MultiKeyBinaryCommands) {
+                byte[][] bytesKeys = new byte[keyArray.length][];
+                for (int i = 0; i < keyArray.length; i++)
+                    bytesKeys[i] = _key(keyArray[i]);
+                values = ((MultiKeyBinaryCommands) cmd).mget(bytesKeys);
+            }
+            else if (cmd instanceof ShardedJedis) {
+                ShardedJedisPipeline pipeline = ((ShardedJedis) cmd).pipelined();
+                List<Response<byte[]>> responses = new ArrayList<>(keyArray.length);
+                for (String key : keyArray)
+                    responses.add(pipeline.get(_key(key)));
+                pipeline.sync();
+                values = new ArrayList<>(keyArray.length);
+                for (Response<byte[]> response : responses)
+                    values.add(response.get());
+            }
+            else {
+                values = new ArrayList<>(keyArray.length);
+                for (String key : keyArray)
+                    values.add(cmd.get(_key(key)));
+            }
+            for (int i = 0; i < keyArray.length; i++) {
+                byte[] bytes = values.get(i);
+                if (bytes != null)
+                    results.put(keyArray[i], bytes);
+            }
+            return results;
+        } finally {
+            client.release();
+        }
+    }
+
     @Override
     public void setBytes(String key, byte[] bytes) {
+        setBytes(key, bytes, 0);
+    }
+
+    @Override
+    public void setBytes(String key, byte[] bytes, long timeToLiveInSeconds) {
         try {
-            client.get().set(_key(key), bytes);
+            if (timeToLiveInSeconds > 0)
+                client.get().setex(_key(key), (int)timeToLiveInSeconds, bytes);
+            else
+                client.get().set(_key(key), bytes);
         } finally {
             client.release();
         }
     }
 
     @Override
-    public boolean exists(String key) {
+    public void setBytes(Map<String, byte[]> bytes) {
+        setBytes(bytes, 0);
+    }
+
+    /**
+     * 单机和哨兵模式使用 MSET（指定失效时间时使用 pipeline 批量 SETEX），分片模式使用 pipeline，
+     * 集群模式下由于 key 分布在不同的 slot 只能逐个写入
+     */
+    @Override
+    public void setBytes(Map<String, byte[]> bytes, long timeToLiveInSeconds) {
+        if (bytes.isEmpty())
+            return;
+        int seconds = (int)timeToLiveInSeconds;
         try {
-            return client.get().exists(_key(key));
+            BinaryJedisCommands cmd = client.get();
+            if (seconds > 0 && cmd instanceof Jedis) {
+                Pipeline pipeline = ((Jedis) cmd).pipelined();
+                bytes.forEach((k, v) -> pipeline.setex(_key(k), seconds, v));
+                pipeline.sync();
+            }
+            else if (seconds > 0 && cmd instanceof ShardedJedis) {
+                ShardedJedisPipeline pipeline = ((ShardedJedis) cmd).pipelined();
+                bytes.forEach((k, v) -> pipeline.setex(_key(k), seconds, v));
+                pipeline.sync();
+            }
+            else if (seconds > 0)
+                bytes.forEach((k, v) -> cmd.setex(_key(k), seconds, v));
+            else if (cmd instanceof MultiKeyBinaryCommands) {
+                byte[][] keysvalues = new byte[bytes.size() * 2][];
+                int i = 0;
+                for (Map.Entry<String, byte[]> entry : bytes.entrySet()) {
+                    keysvalues[i++] = _key(entry.getKey());
+                    keysvalues[i++] = entry.getValue();
+                }
+                ((MultiKeyBinaryCommands) cmd).mset(keysvalues);
+            }
+            else if (cmd instanceof ShardedJedis) {
+                ShardedJedisPipeline pipeline = ((ShardedJedis) cmd).pipelined();
+                bytes.forEach((k, v) -> pipeline.set(_key(k), v));
+                pipeline.sync();
+            }
+            else
+                bytes.forEach((k, v) -> cmd.set(_key(k), v));
         } finally {
             client.release();
         }
     }
 
+    @Override
+    public void put(String key, Object value) {
+        put(key, value, 0);
+    }
+
+    @Override
+    public void put(String key, Object value, long timeToLiveInSeconds) {
+        try {
+            setBytes(key, SerializationUtils.serialize(value, regionName), timeToLiveInSeconds);
+        } catch (IOException e) {
+            throw new CacheException(e);
+        }
+    }
+
+    @Override
+    public void put(Map<String, Object> elements) {
+        put(elements, 0);
+    }
+
+    @Override
+    public void put(Map<String, Object> elements, long timeToLiveInSeconds) {
+        Map<String, byte[]> bytes = new HashMap<>();
+        try {
+            for (Map.Entry<String, Object> entry : elements.entrySet())
+                bytes.put(entry.getKey(), SerializationUtils.serialize(entry.getValue(), regionName));
+        } catch (IOException e) {
+            throw new CacheException(e);
+        }
+        setBytes(bytes, timeToLiveInSeconds);
+    }
+
     /**
-     * 性能可能极其低下，谨慎使用
+     * 单机和哨兵模式以及分片模式使用 pipeline 批量 INCRBY，集群模式逐个 INCRBY
      */
     @Override
-    public Collection<String> keys() {
+    public void incr(String[] keys, long[] deltas) {
         try {
             BinaryJedisCommands cmd = client.get();
-            if (cmd instanceof MultiKeyCommands)
-                return ((MultiKeyCommands) cmd).keys(this.region + ":*");
+            if (cmd instanceof Jedis) {
+                Pipeline pipeline = ((Jedis) cmd).pipelined();
+                for (int i = 0; i < keys.length; i++)
+                    pipeline.incrBy(_key(keys[i]), deltas[i]);
+                pipeline.sync();
+            }
+            else if (cmd instanceof ShardedJedis) {
+                ShardedJedisPipeline pipeline = ((ShardedJedis) cmd).pipelined();
+                for (int i = 0; i < keys.length; i++)
+                    pipeline.incrBy(_key(keys[i]), deltas[i]);
+                pipeline.sync();
+            }
+            else {
+                for (int i = 0; i < keys.length; i++)
+                    cmd.incrBy(_key(keys[i]), deltas[i]);
+            }
         } finally {
             client.release();
         }
-        throw new CacheException("keys() not implemented in Redis Generic Mode");
+    }
+
+    @Override
+    public long ttl(String key) {
+        try {
+            Long ttl = client.get().ttl(_key(key));
+            return (ttl != null && ttl > 0) ? ttl * 1000 : -1;
+        } finally {
+            client.release();
+        }
+    }
+
+    /**
+     * 单机、哨兵和分片模式使用 pipeline 批量 TTL，集群模式逐个读取
+     */
+    @Override
+    public Map<String, Long> ttl(Collection<String> keys) {
+        Map<String, Long> results = new HashMap<>();
+        if (keys.isEmpty())
+            return results;
+        String[] keyArray = keys.toArray(new String[keys.size()]);
+        List<Long> ttls = new ArrayList<>(keyArray.length);
+        try {
+            BinaryJedisCommands cmd = client.get();
+            if (cmd instanceof Jedis || cmd instanceof ShardedJedis) {
+                List<Response<Long>> responses = new ArrayList<>(keyArray.length);
+                if (cmd instanceof Jedis) {
+                    Pipeline pipeline = ((Jedis) cmd).pipelined();
+                    for (String key : keyArray)
+                        responses.add(pipeline.ttl(_key(key)));
+                    pipeline.sync();
+                }
+                else {
+                    ShardedJedisPipeline pipeline = ((ShardedJedis) cmd).pipelined();
+                    for (String key : keyArray)
+                        responses.add(pipeline.ttl(_key(key)));
+                    pipeline.sync();
+                }
+                for (Response<Long> response : responses)
+                    ttls.add(response.get());
+            }
+            else {
+                for (String key : keyArray)
+                    ttls.add(cmd.ttl(_key(key)));
+            }
+        } finally {
+            client.release();
+        }
+        for (int i = 0; i < keyArray.length; i++) {
+            Long ttl = ttls.get(i);
+            if (ttl != null && ttl > 0)
+                results.put(keyArray[i], ttl * 1000);
+        }
+        return results;
+    }
+
+    @Override
+    public boolean exists(String key) {
+        try {
+            return client.get().exists(_key(key));
+        } finally {
+            client.release();
+        }
+    }
+
+    /**
+     * 通过 SCAN 遍历所有的缓存键，支持集群和分片模式，缓存键很多时应使用 {@link #scanKeys()}
+     */
+    @Override
+    public Collection<String> keys() {
+        try (Stream<String> keys = scanKeys()) {
+            return keys.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * 使用 SCAN 命令分批遍历 region 下的缓存键，不会阻塞 Redis
+     */
+    @Override
+    public Stream<String> scanKeys() {
+        byte[] prefix = keyPrefix();
+        Iterator<byte[]> it = client.scan(_pattern(prefix), scanCount);
+        int prefixLength = prefix.length;
+        //返回的是完整的 redis key，需要去掉 region 前缀
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.NONNULL), false)
+                .map(k -> new String(k, prefixLength, k.length - prefixLength));
     }
 
     @Override
@@ -103,18 +419,123 @@ public class RedisGenericCache implements Level2Cache {
     }
 
     /**
-     * 性能可能极其低下，谨慎使用
+     * 分批删除缓存数据，等待删除完成，见 {@link #clearAsync()}
      */
     @Override
     public void clear() {
         try {
-            BinaryJedisCommands cmd = client.get();
-            if (cmd instanceof MultiKeyCommands)
-                ((MultiKeyCommands)cmd).del(((MultiKeyCommands) cmd).keys(this.region + ":*").stream().toArray(String[]::new));
+            clearAsync().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof CacheException)
+                throw (CacheException) e.getCause();
+            throw new CacheException(e.getCause());
+        }
+    }
+
+    /**
+     * 在后台使用 SCAN 分批遍历 region 下的缓存键并逐批删除，集群模式的各个主节点和分片模式的各个分片并行清除
+     * 每批删除使用 pipeline 通过 EVALSHA 逐个 UNLINK，避免一次删除大量缓存键阻塞 Redis，可以通过 redis.clear_rate 限制删除速度
+     */
+    @Override
+    public CompletableFuture<Void> clearAsync() {
+        return clearAsync(_pattern(keyPrefix()));
+    }
+
+    /**
+     * 在后台分批删除所有匹配的 key
+     * @param pattern key 匹配规则
+     * @return future completed when all matched keys are deleted
+     */
+    protected CompletableFuture<Void> clearAsync(byte[] pattern) {
+        ClearProgress progress = new ClearProgress();
+        CompletableFuture<?>[] futures = client.nodes().stream()
+                .map(node -> CompletableFuture.runAsync(() -> clear(node, pattern, progress), clearExecutor))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(futures).whenComplete((r, e) -> {
+            if (e != null)
+                log.error(String.format("Failed to clear keys [%s] after %d keys deleted", new String(pattern), progress.deleted.sum()), e);
             else
-                throw new CacheException("clear() not implemented in Redis Generic Mode");
-        } finally {
-            client.release();
+                log.info(String.format("Keys [%s] cleared, %d keys deleted in %d ms", new String(pattern), progress.deleted.sum(), progress.elapsed()));
+        });
+    }
+
+    private void clear(RedisClient.Node node, byte[] pattern, ClearProgress progress) {
+        ScanParams params = new ScanParams().match(pattern).count(scanCount);
+        byte[] cursor = ScanParams.SCAN_POINTER_START_BINARY;
+        //脚本只在每个节点上加载一次，逐个删除时仅发送脚本的 SHA1
+        byte[] sha = node.execute(jedis -> jedis.scriptLoad(UNLINK_SCRIPT));
+        do {
+            byte[] current = cursor;
+            ScanResult<byte[]> result = node.execute(jedis -> jedis.scan(current, params));
+            List<byte[]> keys = result.getResult();
+            if (!keys.isEmpty()) {
+                long begin = System.nanoTime();
+                boolean flushed = node.execute(jedis -> {
+                    Pipeline pipeline = jedis.pipelined();
+                    for (byte[] key : keys)
+                        pipeline.evalsha(sha, 1, key);
+                    return pipeline.syncAndReturnAll().stream().anyMatch(RedisGenericCache::isNoScript);
+                });
+                //脚本缓存被 SCRIPT FLUSH 或者节点重启清除时，重新加载脚本后删除本批数据
+                if (flushed) {
+                    node.execute(jedis -> {
+                        jedis.scriptLoad(UNLINK_SCRIPT);
+                        Pipeline pipeline = jedis.pipelined();
+                        for (byte[] key : keys)
+                            pipeline.evalsha(sha, 1, key);
+                        pipeline.sync();
+                        return null;
+                    });
+                }
+                progress.add(keys.size());
+                throttle(keys.size(), System.nanoTime() - begin);
+            }
+            cursor = result.getCursorAsBytes();
+        } while (!Arrays.equals(cursor, ScanParams.SCAN_POINTER_START_BINARY));
+    }
+
+    private static boolean isNoScript(Object reply) {
+        return reply instanceof JedisDataException && String.valueOf(((JedisDataException) reply).getMessage()).startsWith("NOSCRIPT");
+    }
+
+    /**
+     * 删除速度超过 clearRate 时暂停，使该节点每秒删除的数量不超过 clearRate
+     */
+    private void throttle(int count, long elapsedNanos) {
+        if (clearRate <= 0)
+            return;
+        long pause = count * TimeUnit.SECONDS.toNanos(1) / clearRate - elapsedNanos;
+        if (pause > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(pause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CacheException("Clearing region " + region + " interrupted");
+            }
+        }
+    }
+
+    /**
+     * 清除进度，每隔一段时间输出一次已经删除的数量
+     */
+    private class ClearProgress {
+
+        private final static long REPORT_INTERVAL = 5000;
+
+        private final long start = System.currentTimeMillis();
+        private final LongAdder deleted = new LongAdder();
+        private final AtomicLong lastReport = new AtomicLong(start);
+
+        void add(int count) {
+            deleted.add(count);
+            long now = System.currentTimeMillis();
+            long last = lastReport.get();
+            if (now - last >= REPORT_INTERVAL && lastReport.compareAndSet(last, now))
+                log.info(String.format("Clearing region [%s], %d keys deleted in %d ms", region, deleted.sum(), now - start));
+        }
+
+        long elapsed() {
+            return System.currentTimeMillis() - start;
         }
     }
 }
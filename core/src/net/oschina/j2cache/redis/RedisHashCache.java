@@ -15,15 +15,27 @@
  */
 package net.oschina.j2cache.redis;
 
+import net.oschina.j2cache.CacheException;
 import net.oschina.j2cache.Level2Cache;
+import net.oschina.j2cache.util.SerializationUtils;
+import redis.clients.jedis.BinaryJedisCommands;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ShardedJedis;
+import redis.clients.jedis.ShardedJedisPipeline;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Redis 缓存操作封装，基于 Hashs 实现多个 Region 的缓存（
+ * 注意：Hash 中的字段不能单独设置失效时间，该模式下写入缓存时指定的失效时间只对一级缓存有效
  * @author wendal
  * @author Winter Lau(javayou@gmail.com)
  */
@@ -33,8 +45,10 @@ public class RedisHashCache implements Level2Cache {
 
     private String namespace;
     private String region;
+    private String regionName; //不含命名空间的区域名称，用于读取区域的压缩配置
     private byte[] regionBytes;
     private RedisClient client;
+    private int scanCount;
 
     /**
      * 缓存构造
@@ -43,13 +57,26 @@ public class RedisHashCache implements Level2Cache {
      * @param client 缓存客户端接口
      */
     public RedisHashCache(String namespace, String region, RedisClient client) {
+        this(namespace, region, client, RedisCacheProvider.DEFAULT_SCAN_COUNT);
+    }
+
+    /**
+     * 缓存构造
+     * @param namespace 命名空间，用于在多个实例中避免 key 的重叠
+     * @param region 缓存区域的名称
+     * @param client 缓存客户端接口
+     * @param scanCount 遍历缓存键时每次 HSCAN 读取的数量
+     */
+    public RedisHashCache(String namespace, String region, RedisClient client, int scanCount) {
         if (region == null || region.isEmpty())
             region = "_"; // 缺省region
 
         this.client = client;
         this.namespace = namespace;
         this.region = getRegionName(region);
+        this.regionName = region;
         this.regionBytes = region.getBytes();
+        this.scanCount = scanCount;
     }
 
     /**
@@ -74,6 +101,28 @@ public class RedisHashCache implements Level2Cache {
         }
     }
 
+    @Override
+    public Map<String, byte[]> getBytes(Collection<String> keys) {
+        Map<String, byte[]> results = new HashMap<>();
+        if (keys.isEmpty())
+            return results;
+        String[] keyArray = keys.toArray(new String[keys.size()]);
+        byte[][] fields = new byte[keyArray.length][];
+        for (int i = 0; i < keyArray.length; i++)
+            fields[i] = keyArray[i].getBytes();
+        try {
+            List<byte[]> values = client.get().hmget(regionBytes, fields);
+            for (int i = 0; i < keyArray.length; i++) {
+                byte[] bytes = values.get(i);
+                if (bytes != null)
+                    results.put(keyArray[i], bytes);
+            }
+            return results;
+        } finally {
+            client.release();
+        }
+    }
+
     @Override
     public void setBytes(String key, byte[] bytes) {
         try {
@@ -83,6 +132,68 @@ public class RedisHashCache implements Level2Cache {
         }
     }
 
+    @Override
+    public void setBytes(Map<String, byte[]> bytes) {
+        if (bytes.isEmpty())
+            return;
+        Map<byte[], byte[]> fields = new HashMap<>();
+        bytes.forEach((k, v) -> fields.put(k.getBytes(), v));
+        try {
+            client.get().hmset(regionBytes, fields);
+        } finally {
+            client.release();
+        }
+    }
+
+    @Override
+    public void put(String key, Object value) {
+        try {
+            setBytes(key, SerializationUtils.serialize(value, regionName));
+        } catch (IOException e) {
+            throw new CacheException(e);
+        }
+    }
+
+    @Override
+    public void put(Map<String, Object> elements) {
+        Map<String, byte[]> bytes = new HashMap<>();
+        try {
+            for (Map.Entry<String, Object> entry : elements.entrySet())
+                bytes.put(entry.getKey(), SerializationUtils.serialize(entry.getValue(), regionName));
+        } catch (IOException e) {
+            throw new CacheException(e);
+        }
+        setBytes(bytes);
+    }
+
+    /**
+     * 使用 HINCRBY 累加计数器，单机、哨兵和分片模式使用 pipeline
+     */
+    @Override
+    public void incr(String[] keys, long[] deltas) {
+        try {
+            BinaryJedisCommands cmd = client.get();
+            if (cmd instanceof Jedis) {
+                Pipeline pipeline = ((Jedis) cmd).pipelined();
+                for (int i = 0; i < keys.length; i++)
+                    pipeline.hincrBy(regionBytes, keys[i].getBytes(), deltas[i]);
+                pipeline.sync();
+            }
+            else if (cmd instanceof ShardedJedis) {
+                ShardedJedisPipeline pipeline = ((ShardedJedis) cmd).pipelined();
+                for (int i = 0; i < keys.length; i++)
+                    pipeline.hincrBy(regionBytes, keys[i].getBytes(), deltas[i]);
+                pipeline.sync();
+            }
+            else {
+                for (int i = 0; i < keys.length; i++)
+                    cmd.hincrBy(regionBytes, keys[i].getBytes(), deltas[i]);
+            }
+        } finally {
+            client.release();
+        }
+    }
+
     @Override
     public boolean exists(String key) {
         try {
@@ -116,6 +227,23 @@ public class RedisHashCache implements Level2Cache {
         }
     }
 
+    /**
+     * 使用 HSCAN 命令分批遍历缓存键，每批读取完成后立即释放连接
+     */
+    @Override
+    public Stream<String> scanKeys() {
+        ScanParams params = new ScanParams().count(scanCount);
+        Iterator<Map.Entry<byte[], byte[]>> it = new RedisClient.ScanIterator<>(Collections.singletonList(cursor -> {
+            try {
+                return client.get().hscan(regionBytes, cursor, params);
+            } finally {
+                client.release();
+            }
+        }));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.NONNULL), false)
+                .map(e -> new String(e.getKey()));
+    }
+
     @Override
     public void clear() {
         try {
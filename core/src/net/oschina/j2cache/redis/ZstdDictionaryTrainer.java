@@ -0,0 +1,257 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache.redis;
+
+import net.oschina.j2cache.CacheException;
+import net.oschina.j2cache.Level2Cache;
+import net.oschina.j2cache.util.ConfigUtils;
+import net.oschina.j2cache.util.SerializationUtils;
+import net.oschina.j2cache.util.ZstdDictionaries;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 使用 Redis 中的缓存数据为缓存区域训练 zstd 字典，并通过 Redis 在所有节点间共享
+ * <p>[namespace:]j2cache:zstd_dicts -> Hash，版本号 -> 字典数据，旧版本的字典保留用于解压已有的缓存数据</p>
+ * <p>[namespace:]j2cache:zstd_dict_versions -> Hash，区域名称 -> 当前版本号:训练时间</p>
+ * <p>版本号由 [namespace:]j2cache:zstd_dict_seq 生成，训练时使用 SET NX 加锁，同一时间只有一个节点训练同一个区域的字典</p>
+ *
+ * @author Winter Lau(javayou@gmail.com)
+ */
+class ZstdDictionaryTrainer {
+
+    private final static Logger log = LoggerFactory.getLogger(ZstdDictionaryTrainer.class);
+
+    private final static long CHECK_INTERVAL = 60; //检查字典版本的间隔（秒）
+    private final static int LOCK_SECONDS = 600;
+    private final static int MIN_SAMPLES = 20;
+    private final static int BATCH_SIZE = 500;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "j2cache-zstd-dict");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final RedisClient client;
+    private final String prefix;
+    private final byte[] dictsKey;
+    private final byte[] versionsKey;
+    private final byte[] seqKey;
+    private final Map<String, Config> configs = new HashMap<>();
+    private final ConcurrentHashMap<String, Level2Cache> regions = new ConcurrentHashMap<>();
+
+    /**
+     * @param namespace 命名空间
+     * @param client redis client
+     * @param props 各区域的字典配置，key 为区域名称
+     */
+    ZstdDictionaryTrainer(String namespace, RedisClient client, Properties props) {
+        this.client = client;
+        this.prefix = (namespace != null && !namespace.isEmpty()) ? namespace + ":j2cache:" : "j2cache:";
+        this.dictsKey = (prefix + "zstd_dicts").getBytes();
+        this.versionsKey = (prefix + "zstd_dict_versions").getBytes();
+        this.seqKey = (prefix + "zstd_dict_seq").getBytes();
+        props.stringPropertyNames().forEach(region -> configs.put(region, Config.parse(props.getProperty(region))));
+    }
+
+    /**
+     * 缓存区域是否配置了字典
+     * @param region 缓存区域的名称
+     * @return true if the region uses a zstd dictionary
+     */
+    boolean isEnabled(String region) {
+        return configs.containsKey(region);
+    }
+
+    /**
+     * 开始维护缓存区域的字典，立即加载已有的字典，此后定期检查其他节点训练的新版本以及是否需要重新训练
+     * @param region 缓存区域的名称
+     * @param cache 用于读取样本数据的二级缓存
+     */
+    void start(String region, Level2Cache cache) {
+        if (!isEnabled(region) || regions.putIfAbsent(region, cache) != null)
+            return;
+        try {
+            refresh(region);
+        } catch (Exception e) {
+            log.warn("Failed to load zstd dictionary of region " + region, e);
+        }
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                check(region, cache);
+            } catch (Exception e) {
+                log.warn("Failed to train zstd dictionary of region " + region, e);
+            }
+        }, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 读取指定版本的字典
+     * @param version 版本号
+     * @return dictionary data or null
+     */
+    byte[] load(int version) {
+        try {
+            return client.get().hget(dictsKey, String.valueOf(version).getBytes());
+        } finally {
+            client.release();
+        }
+    }
+
+    /**
+     * 加载区域当前版本的字典
+     * @return 当前版本，区域还没有字典时返回 null
+     */
+    private Version refresh(String region) {
+        Version version = current(region);
+        if (version != null && version.version != ZstdDictionaries.version(region)) {
+            byte[] dict = load(version.version);
+            if (dict == null)
+                throw new CacheException("Zstd dictionary of region " + region + " not found, version: " + version.version);
+            ZstdDictionaries.install(region, version.version, dict);
+        }
+        return version;
+    }
+
+    private void check(String region, Level2Cache cache) {
+        if (!isStale(refresh(region), configs.get(region)))
+            return;
+        byte[] lockKey = (prefix + "zstd_dict_lock:" + region).getBytes();
+        try {
+            if (!"OK".equals(client.get().set(lockKey, "1".getBytes(), "NX".getBytes(), "EX".getBytes(), LOCK_SECONDS)))
+                return;
+        } finally {
+            client.release();
+        }
+        try {
+            //加锁期间其他节点可能已经完成训练
+            if (isStale(refresh(region), configs.get(region)))
+                train(region, cache, configs.get(region));
+        } finally {
+            try {
+                client.get().del(lockKey);
+            } finally {
+                client.release();
+            }
+        }
+    }
+
+    private boolean isStale(Version version, Config config) {
+        return version == null || (config.retrain > 0 && System.currentTimeMillis() - version.created >= config.retrain * 1000);
+    }
+
+    /**
+     * 从二级缓存中读取样本数据训练字典，保存到 Redis 并设置为区域当前使用的字典
+     */
+    private void train(String region, Level2Cache cache, Config config) {
+        List<byte[]> samples = new ArrayList<>();
+        List<String> keys = cache.scanKeys().limit(config.samples).collect(Collectors.toList());
+        for (int i = 0; i < keys.size(); i += BATCH_SIZE) {
+            for (byte[] bytes : cache.getBytes(keys.subList(i, Math.min(i + BATCH_SIZE, keys.size()))).values()) {
+                try {
+                    byte[] sample = SerializationUtils.decompress(bytes);
+                    if (sample != null && sample.length > 0)
+                        samples.add(sample);
+                } catch (Exception e) {
+                    //计数器等不是序列化数据的缓存值
+                }
+            }
+        }
+        if (samples.size() < MIN_SAMPLES) {
+            log.debug(String.format("Not enough samples to train zstd dictionary of region %s: %d", region, samples.size()));
+            return;
+        }
+        byte[] dict = ZstdDictionaries.train(samples, config.dictSize);
+        if (dict == null)
+            return;
+        int version;
+        try {
+            version = client.get().incr(seqKey).intValue();
+            client.get().hset(dictsKey, String.valueOf(version).getBytes(), dict);
+            client.get().hset(versionsKey, region.getBytes(StandardCharsets.UTF_8),
+                    (version + ":" + System.currentTimeMillis()).getBytes());
+        } finally {
+            client.release();
+        }
+        ZstdDictionaries.install(region, version, dict);
+        log.info(String.format("Trained zstd dictionary [%s] version %d with %d samples, %d bytes", region, version, samples.size(), dict.length));
+    }
+
+    private Version current(String region) {
+        byte[] value;
+        try {
+            value = client.get().hget(versionsKey, region.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            client.release();
+        }
+        if (value == null)
+            return null;
+        String[] parts = new String(value).split(":");
+        Version version = new Version();
+        version.version = Integer.parseInt(parts[0]);
+        version.created = (parts.length > 1) ? Long.parseLong(parts[1]) : 0;
+        return version;
+    }
+
+    private static class Version {
+        private int version;
+        private long created;
+    }
+
+    /**
+     * 字典配置
+     */
+    static class Config {
+
+        private int samples;
+        private int dictSize = 16 * 1024;
+        private long retrain;
+
+        /**
+         * 配置格式: samples[, dict size[, retrain interval]]，例如 2000, 16KB, 7d
+         * samples -> 训练使用的最大样本数量
+         * dict size -> 字典的最大字节数
+         * retrain interval -> 重新训练字典的间隔，不配置时只训练一次
+         * @param cfg config value
+         * @return dictionary config
+         */
+        static Config parse(String cfg) {
+            Config config = new Config();
+            String[] cfgs = cfg.split(",");
+            config.samples = Integer.parseInt(cfgs[0].trim());
+            if (cfgs.length > 1)
+                config.dictSize = (int) ConfigUtils.parseBytes(cfgs[1]);
+            if (cfgs.length > 2)
+                config.retrain = ConfigUtils.parseSeconds(cfgs[2]);
+            if (config.samples < MIN_SAMPLES || config.dictSize < 256)
+                throw new CacheException("Illegal zstd dictionary config: " + cfg);
+            return config;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache.util;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 按大小分级的字节数组池，用于序列化时重用缓冲区
+ * 数组大小为 1KB ~ 1MB 之间 2 的整数次幂，每一级最多保留 4MB（至多 64 个）的空闲数组，超过 1MB 的数组不重用
+ *
+ * @author Winter Lau(javayou@gmail.com)
+ */
+public class BufferPool {
+
+    public final static int MIN_SIZE = 1024;
+    public final static int MAX_SIZE = 1024 * 1024;
+
+    private final static int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE);
+    private final static int CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE) - MIN_SHIFT + 1;
+    private final static int MAX_BYTES_PER_CLASS = 4 * 1024 * 1024;
+    private final static int MAX_BUFFERS_PER_CLASS = 64;
+
+    @SuppressWarnings("unchecked")
+    private final static ConcurrentLinkedDeque<byte[]>[] pools = new ConcurrentLinkedDeque[CLASSES];
+    private final static AtomicIntegerArray counts = new AtomicIntegerArray(CLASSES);
+
+    static {
+        for (int i = 0; i < CLASSES; i++)
+            pools[i] = new ConcurrentLinkedDeque<>();
+    }
+
+    /**
+     * 取得至少 size 字节的数组，数组中可能有之前使用时留下的数据
+     * @param size 最小字节数
+     * @return byte array
+     */
+    public static byte[] acquire(int size) {
+        int idx = indexOf(size);
+        if (idx >= CLASSES)
+            return new byte[size];
+        byte[] buffer = pools[idx].pollFirst();
+        if (buffer == null)
+            return new byte[MIN_SIZE << idx];
+        counts.decrementAndGet(idx);
+        return buffer;
+    }
+
+    /**
+     * 归还数组，不是由 {@link #acquire(int)} 分配的数组或者该级已满时直接丢弃
+     * @param buffer byte array
+     */
+    public static void release(byte[] buffer) {
+        int size = buffer.length;
+        if (size < MIN_SIZE || size > MAX_SIZE || Integer.bitCount(size) != 1)
+            return;
+        int idx = indexOf(size);
+        if (counts.incrementAndGet(idx) > Math.min(MAX_BUFFERS_PER_CLASS, MAX_BYTES_PER_CLASS / size)) {
+            counts.decrementAndGet(idx);
+            return;
+        }
+        pools[idx].offerFirst(buffer);
+    }
+
+    private static int indexOf(int size) {
+        if (size <= MIN_SIZE)
+            return 0;
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+}
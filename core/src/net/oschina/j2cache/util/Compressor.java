@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 二级缓存数据的压缩接口，与序列化器无关，由 {@link SerializationUtils} 对序列化后的数据进行压缩
+ * 压缩后的数据以一个字节的压缩算法标识开头，标识 0 表示未压缩，因此压缩和未压缩的数据可以同时存在
+ *
+ * @author Winter Lau(javayou@gmail.com)
+ */
+public interface Compressor {
+
+    /**
+     * 压缩算法的名称，该方法仅用于打印日志的时候显示
+     * @return 返回压缩算法名称
+     */
+    String name();
+
+    /**
+     * 压缩算法的标识，写入压缩数据的第一个字节，0 表示未压缩，1~15 保留给内置的压缩算法
+     * @return 返回压缩算法标识
+     */
+    byte id();
+
+    /**
+     * 压缩数据
+     * @param bytes 待压缩的数据
+     * @return 返回压缩后的数据
+     * @throws IOException io exception
+     */
+    byte[] compress(byte[] bytes) throws IOException;
+
+    /**
+     * 压缩字节数组中的部分数据，用于直接压缩可重用的缓冲区，缺省实现先复制再压缩
+     * @param bytes 待压缩数据所在的字节数组
+     * @param offset 待压缩数据的起始位置
+     * @param length 待压缩数据的长度
+     * @return 返回压缩后的数据
+     * @throws IOException io exception
+     */
+    default byte[] compress(byte[] bytes, int offset, int length) throws IOException {
+        return compress(Arrays.copyOfRange(bytes, offset, offset + length));
+    }
+
+    /**
+     * 解压数据
+     * @param bytes 压缩数据所在的字节数组
+     * @param offset 压缩数据的起始位置
+     * @param length 压缩数据的长度
+     * @return 返回解压后的数据
+     * @throws IOException io exception
+     */
+    byte[] decompress(byte[] bytes, int offset, int length) throws IOException;
+
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache.util;
+
+import java.util.Properties;
+
+/**
+ * 配置项解析工具包
+ *
+ * @author Winter Lau(javayou@gmail.com)
+ */
+public class ConfigUtils {
+
+    /**
+     * 解析时间配置，支持 s(秒) m(分钟) h(小时) d(天) 单位，没有单位时为秒
+     * @param value 配置值，例如 30s, 10m, 1h
+     * @return 返回秒数
+     */
+    public static long parseSeconds(String value) {
+        value = value.trim();
+        char unit = Character.toLowerCase(value.charAt(value.length() - 1));
+        if(Character.isDigit(unit))
+            return Long.parseLong(value);
+        long seconds = Long.parseLong(value.substring(0, value.length() - 1).trim());
+        switch(unit){
+            case 'm'://minutes
+                return seconds * 60;
+            case 'h'://hours
+                return seconds * 3600;
+            case 'd'://days
+                return seconds * 86400;
+            default://seconds
+                return seconds;
+        }
+    }
+
+    /**
+     * 是否为字节数配置，字节数配置以 B 结尾，例如 512B, 64KB, 64MB, 1GB
+     * @param value 配置值
+     * @return true if the value is a byte size
+     */
+    public static boolean isBytes(String value) {
+        value = value.trim();
+        return !value.isEmpty() && Character.toUpperCase(value.charAt(value.length() - 1)) == 'B';
+    }
+
+    /**
+     * 解析字节数配置，支持 B KB MB GB 单位
+     * @param value 配置值，例如 512B, 64KB, 64MB, 1GB
+     * @return 返回字节数
+     */
+    public static long parseBytes(String value) {
+        value = value.trim().toUpperCase();
+        if(!isBytes(value))
+            return Long.parseLong(value);
+        value = value.substring(0, value.length() - 1).trim();
+        char unit = value.charAt(value.length() - 1);
+        if(Character.isDigit(unit))
+            return Long.parseLong(value);
+        long bytes = Long.parseLong(value.substring(0, value.length() - 1).trim());
+        switch(unit){
+            case 'K':
+                return bytes * 1024;
+            case 'M':
+                return bytes * 1024 * 1024;
+            case 'G':
+                return bytes * 1024 * 1024 * 1024;
+            default:
+                throw new IllegalArgumentException("Illegal byte size: " + value);
+        }
+    }
+
+    /**
+     * 返回指定前缀的所有配置项，返回结果的 key 不包含前缀
+     * @param props 配置信息
+     * @param prefix 配置项前缀
+     * @return 配置项
+     */
+    public static Properties getProperties(Properties props, String prefix) {
+        Properties new_props = new Properties();
+        for(String key : props.stringPropertyNames()) {
+            if(key.startsWith(prefix))
+                new_props.setProperty(key.substring(prefix.length()), props.getProperty(key).trim());
+        }
+        return new_props;
+    }
+
+}
@@ -18,6 +18,8 @@ package net.oschina.j2cache.util;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import net.oschina.j2cache.CacheException;
 import org.nustaq.serialization.FSTObjectInput;
@@ -45,6 +47,13 @@ public class FSTSerializer implements Serializer {
 		}
 	}
 
+	@Override
+	public void serialize(Object obj, OutputStream out) throws IOException {
+		FSTObjectOutput fOut = new FSTObjectOutput(out);
+		fOut.writeObject(obj);
+		fOut.flush();
+	}
+
 	@Override
 	public Object deserialize(byte[] bytes) throws IOException {
 		if(bytes == null || bytes.length == 0)
@@ -56,4 +65,15 @@ public class FSTSerializer implements Serializer {
 		}
 	}
 
+	@Override
+	public Object deserialize(ByteBuffer buffer) throws IOException {
+		if(!buffer.hasRemaining())
+			return null;
+		try (FSTObjectInput in = new FSTObjectInput(ByteBufferInputStream.of(buffer))){
+			return in.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new CacheException(e);
+		}
+	}
+
 }
@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 使用 JDK 自带的 gzip 压缩，不需要额外的依赖
+ *
+ * @author Winter Lau(javayou@gmail.com)
+ */
+public class GzipCompressor implements Compressor {
+
+    @Override
+    public String name() {
+        return "gzip";
+    }
+
+    @Override
+    public byte id() {
+        return 3;
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(bytes.length / 2 + 32);
+        try (GZIPOutputStream gos = new GZIPOutputStream(bos)) {
+            gos.write(bytes);
+        }
+        return bos.toByteArray();
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes, int offset, int length) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(length / 2 + 32);
+        try (GZIPOutputStream gos = new GZIPOutputStream(bos)) {
+            gos.write(bytes, offset, length);
+        }
+        return bos.toByteArray();
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes, int offset, int length) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(length * 3);
+        try (GZIPInputStream gis = new GZIPInputStream(new ByteArrayInputStream(bytes, offset, length))) {
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = gis.read(buf)) > 0)
+                bos.write(buf, 0, n);
+        }
+        return bos.toByteArray();
+    }
+}
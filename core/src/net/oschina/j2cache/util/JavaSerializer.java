@@ -16,6 +16,7 @@
 package net.oschina.j2cache.util;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 import net.sf.ehcache.CacheException;
 
@@ -40,6 +41,13 @@ public class JavaSerializer implements Serializer {
 		}
 	}
 
+	@Override
+	public void serialize(Object obj, OutputStream out) throws IOException {
+		ObjectOutputStream oos = new ObjectOutputStream(out);
+		oos.writeObject(obj);
+		oos.flush();
+	}
+
 	@Override
 	public Object deserialize(byte[] bits) throws IOException {
 		if(bits == null || bits.length == 0)
@@ -51,5 +59,16 @@ public class JavaSerializer implements Serializer {
 			throw new CacheException(e);
 		}
 	}
+
+	@Override
+	public Object deserialize(ByteBuffer buffer) throws IOException {
+		if(!buffer.hasRemaining())
+			return null;
+		try (ObjectInputStream ois = new ObjectInputStream(ByteBufferInputStream.of(buffer))){
+			return ois.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new CacheException(e);
+		}
+	}
 	
 }
@@ -19,6 +19,9 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Deque;
 import java.util.concurrent.ConcurrentLinkedDeque;
 
@@ -49,6 +52,24 @@ public class KryoPoolSerializer implements Serializer{
         }
     }
 
+    /**
+     * Serialize object to the output stream, written from the pooled output buffer without copying
+     * @param obj what to serialize
+     * @param out output stream
+     */
+    @Override
+    public void serialize(Object obj, OutputStream out) throws IOException {
+        KryoHolder kryoHolder = null;
+        try {
+            kryoHolder = KryoPoolImpl.getInstance().get();
+            kryoHolder.output.clear();
+            kryoHolder.kryo.writeClassAndObject(kryoHolder.output, obj);
+            out.write(kryoHolder.output.getBuffer(), 0, kryoHolder.output.position());
+        } finally {
+            KryoPoolImpl.getInstance().offer(kryoHolder);
+        }
+    }
+
     /**
      * Deserialize data
      * @param bytes what to deserialize
@@ -68,6 +89,25 @@ public class KryoPoolSerializer implements Serializer{
         }
     }
 
+    /**
+     * Deserialize data, heap buffers are read in place
+     * @param buffer what to deserialize
+     * @return object
+     */
+    @Override
+    public Object deserialize(ByteBuffer buffer) throws IOException {
+        if (!buffer.hasArray())
+            return Serializer.super.deserialize(buffer);
+        KryoHolder kryoHolder = null;
+        try {
+            kryoHolder = KryoPoolImpl.getInstance().get();
+            kryoHolder.input.setBuffer(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return kryoHolder.kryo.readClassAndObject(kryoHolder.input);
+        } finally {
+            KryoPoolImpl.getInstance().offer(kryoHolder);
+        }
+    }
+
     /**
      * Kryo 的包装
      */
@@ -22,6 +22,8 @@ import com.esotericsoftware.kryo.io.Output;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * 使用 Kryo 实现序列化
@@ -48,6 +50,13 @@ public class KryoSerializer implements Serializer {
 		}
 	}
 
+	@Override
+	public void serialize(Object obj, OutputStream out) throws IOException {
+		Output output = new Output(out);
+		kryo.writeClassAndObject(output, obj);
+		output.flush();
+	}
+
 	@Override
 	public Object deserialize(byte[] bits) throws IOException {
 		if(bits == null || bits.length == 0)
@@ -56,5 +65,14 @@ public class KryoSerializer implements Serializer {
 			return kryo.readClassAndObject(ois);
 		}
 	}
+
+	@Override
+	public Object deserialize(ByteBuffer buffer) throws IOException {
+		if(!buffer.hasRemaining())
+			return null;
+		try (Input ois = new Input(ByteBufferInputStream.of(buffer))){
+			return kryo.readClassAndObject(ois);
+		}
+	}
 	
 }
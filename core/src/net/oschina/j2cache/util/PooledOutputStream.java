@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache.util;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * 使用 {@link BufferPool} 中的数组作为缓冲区的输出流，用完后必须调用 {@link #release()} 归还缓冲区
+ * close() 不会释放缓冲区，序列化器关闭输出流后仍然可以读取写入的数据
+ *
+ * @author Winter Lau(javayou@gmail.com)
+ */
+public class PooledOutputStream extends OutputStream {
+
+    private byte[] buffer;
+    private int count;
+
+    public PooledOutputStream() {
+        this(BufferPool.MIN_SIZE);
+    }
+
+    /**
+     * @param size 初始缓冲区大小
+     */
+    public PooledOutputStream(int size) {
+        this.buffer = BufferPool.acquire(size);
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity < 0)
+            throw new OutOfMemoryError();
+        if (capacity > buffer.length) {
+            byte[] newBuffer = BufferPool.acquire(Math.max(capacity, buffer.length << 1));
+            System.arraycopy(buffer, 0, newBuffer, 0, count);
+            BufferPool.release(buffer);
+            buffer = newBuffer;
+        }
+    }
+
+    /**
+     * 缓冲区，有效数据为 [0, size())
+     * @return buffer
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    /**
+     * 归还缓冲区，之后不能再使用该输出流
+     */
+    public void release() {
+        if (buffer != null) {
+            BufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+}
@@ -20,9 +20,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 对象序列化工具包
+ * 启用 j2cache.compression 后，序列化数据超过区域的压缩阈值时进行压缩，数据的第一个字节为压缩算法标识（0 表示未压缩）
  *
  * @author Winter Lau(javayou@gmail.com)
  */
@@ -30,6 +36,27 @@ public class SerializationUtils {
 
     private final static Logger log = LoggerFactory.getLogger(SerializationUtils.class);
     private static Serializer g_serializer;
+    private static boolean g_streaming; //序列化器是否实现了 serialize(Object, OutputStream)
+
+    private final static byte UNCOMPRESSED = 0;
+    private final static byte DICTIONARY = 4; //使用区域的 zstd 字典压缩，见 ZstdDictionaries
+    private final static int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+
+    //按标识索引的压缩算法，用于解压使用其他压缩算法写入的数据
+    private final static Compressor[] g_compressors = new Compressor[128];
+    private static volatile Compressor g_compressor; //为 null 表示不压缩
+    private static volatile boolean g_header; //序列化数据是否以压缩算法标识开头
+    private static int g_threshold = DEFAULT_COMPRESSION_THRESHOLD;
+    private final static ConcurrentHashMap<String, Integer> g_thresholds = new ConcurrentHashMap<>();
+
+    //当前线程即将写入一级缓存的对象及其序列化后未压缩的长度，见 hintSize
+    private final static ThreadLocal<Object[]> g_hint = new ThreadLocal<>();
+
+    static {
+        register(new SnappyCompressor());
+        register(new ZstdCompressor());
+        register(new GzipCompressor());
+    }
 
     /**
      * 初始化序列化器
@@ -57,9 +84,77 @@ public class SerializationUtils {
                 }
             }
         }
+        g_streaming = isStreaming(g_serializer);
         log.info("Using Serializer -> [" + g_serializer.name() + ":" + g_serializer.getClass().getName() + ']');
     }
 
+    private static boolean isStreaming(Serializer serializer) {
+        try {
+            return serializer.getClass().getMethod("serialize", Object.class, OutputStream.class).getDeclaringClass() != Serializer.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 初始化压缩算法及各区域的压缩阈值
+     * j2cache.compression = none|snappy|zstd|gzip|[classname implements Compressor]
+     * j2cache.compression_threshold.[region] = 序列化数据达到该大小才压缩，default 为未配置区域的阈值
+     * @param props j2cache 配置信息
+     */
+    public static void initCompression(Properties props) {
+        String name = props.getProperty("j2cache.compression", "none").trim();
+        Properties thresholds = ConfigUtils.getProperties(props, "j2cache.compression_threshold.");
+        g_thresholds.clear();
+        g_header = false;
+        g_threshold = DEFAULT_COMPRESSION_THRESHOLD;
+        for (String region : thresholds.stringPropertyNames()) {
+            int threshold = (int) ConfigUtils.parseBytes(thresholds.getProperty(region));
+            if ("default".equals(region))
+                g_threshold = threshold;
+            else
+                g_thresholds.put(region, threshold);
+        }
+
+        if ("".equals(name) || "none".equals(name)) {
+            g_compressor = null;
+            return;
+        }
+        Compressor compressor = null;
+        for (Compressor c : g_compressors) {
+            if (c != null && c.name().equals(name))
+                compressor = c;
+        }
+        if (compressor == null) {
+            try {
+                compressor = (Compressor) Class.forName(name).newInstance();
+            } catch (Exception e) {
+                throw new CacheException("Cannot initialize Compressor named [" + name + ']', e);
+            }
+            register(compressor);
+        }
+        g_compressor = compressor;
+        g_header = true;
+        log.info("Using Compressor -> [" + compressor.name() + ":" + compressor.getClass().getName() + "], threshold: " + g_threshold + " bytes");
+    }
+
+    private static void register(Compressor compressor) {
+        byte id = compressor.id();
+        if (id <= UNCOMPRESSED || id == DICTIONARY)
+            throw new CacheException("Illegal id of Compressor [" + compressor.getClass().getName() + "]: " + id);
+        Compressor exists = g_compressors[id];
+        if (exists != null && !exists.getClass().equals(compressor.getClass()))
+            throw new CacheException("Duplicate id of Compressor [" + compressor.getClass().getName() + "]: " + id);
+        g_compressors[id] = compressor;
+    }
+
+    /**
+     * 启用一个字节的压缩算法标识，用于不需要通用压缩的字典压缩（见 {@link ZstdDictionaries#enable}）
+     */
+    static void enableHeader() {
+        g_header = true;
+    }
+
     /**
      * 针对不同类型做单独处理
      * @param obj 待序列化的对象
@@ -67,9 +162,129 @@ public class SerializationUtils {
      * @throws IOException io exception
      */
     public static byte[] serialize(Object obj) throws IOException {
+        return serialize(obj, null);
+    }
+
+    /**
+     * 序列化对象，启用压缩时使用区域的压缩阈值
+     * @param obj 待序列化的对象
+     * @param region 缓存区域的名称，为 null 时使用缺省的压缩阈值
+     * @return 返回序列化后的字节数组
+     * @throws IOException io exception
+     */
+    public static byte[] serialize(Object obj, String region) throws IOException {
         if (obj == null)
             return null;
-        return g_serializer.serialize(obj);
+        if (!g_streaming) {
+            byte[] bytes = g_serializer.serialize(obj);
+            return g_header ? compress(bytes, 0, bytes.length, region) : bytes;
+        }
+        //序列化到可重用的缓冲区，压缩或者加上压缩算法标识时只需要一次复制
+        PooledOutputStream out = new PooledOutputStream();
+        try {
+            g_serializer.serialize(obj, out);
+            return g_header ? compress(out.buffer(), 0, out.size(), region) : out.toByteArray();
+        } finally {
+            out.release();
+        }
+    }
+
+    /**
+     * 序列化对象，不压缩也不加压缩算法标识，结果与压缩配置无关，等同于 {@link #decompress(byte[])} 之后的数据
+     * @param obj 待序列化的对象
+     * @return 序列化器生成的数据
+     * @throws IOException io exception
+     */
+    public static byte[] serializeUncompressed(Object obj) throws IOException {
+        return (obj != null) ? g_serializer.serialize(obj) : null;
+    }
+
+    /**
+     * 反序列化 {@link #serializeUncompressed(Object)} 或者 {@link #decompress(byte[])} 返回的数据
+     * @param bytes 序列化器生成的数据
+     * @return 反序列化后的对象
+     * @throws IOException io exception
+     */
+    public static Object deserializeUncompressed(byte[] bytes) throws IOException {
+        return (bytes != null && bytes.length > 0) ? g_serializer.deserialize(bytes) : null;
+    }
+
+    /**
+     * 计算对象序列化后未压缩的字节数，序列化到可重用的缓冲区，不复制数据
+     * @param obj 待计算的对象
+     * @return 序列化后的字节数
+     * @throws IOException io exception
+     */
+    public static int sizeOf(Object obj) throws IOException {
+        if (obj == null)
+            return 0;
+        if (!g_streaming)
+            return g_serializer.serialize(obj).length;
+        PooledOutputStream out = new PooledOutputStream();
+        try {
+            g_serializer.serialize(obj, out);
+            return out.size();
+        } finally {
+            out.release();
+        }
+    }
+
+    /**
+     * 记录当前线程即将写入一级缓存的对象的字节数，写入时 {@link #estimateSize(Object)} 直接返回该值而不再序列化
+     * 写入完成后应以 null 调用以清除记录
+     * @param obj 即将写入一级缓存的对象，null 表示清除
+     * @param size {@link #sizeOf(Object)} 返回的字节数
+     */
+    public static void hintSize(Object obj, int size) {
+        if (obj == null)
+            g_hint.remove();
+        else
+            g_hint.set(new Object[]{obj, size});
+    }
+
+    /**
+     * 估算对象序列化后未压缩的字节数，优先使用 {@link #hintSize(Object, int)} 记录的字节数，没有记录时序列化一次
+     * @param obj 待估算的对象
+     * @return 序列化后的字节数
+     * @throws IOException io exception
+     */
+    public static long estimateSize(Object obj) throws IOException {
+        Object[] hint = g_hint.get();
+        if (hint != null && hint[0] == obj)
+            return (Integer) hint[1];
+        return sizeOf(obj);
+    }
+
+    /**
+     * 压缩数据并写入一个字节的压缩算法标识，区域有 zstd 字典时优先使用字典压缩，
+     * 否则小于压缩阈值或者压缩后没有变小的数据不压缩
+     */
+    private static byte[] compress(byte[] bytes, int offset, int length, String region) throws IOException {
+        ZstdDictionaries.Dictionary dictionary = ZstdDictionaries.current(region);
+        if (dictionary != null) {
+            byte[] compressed = dictionary.compress(bytes, offset, length, 1);
+            if (compressed.length <= length) {
+                compressed[0] = DICTIONARY;
+                return compressed;
+            }
+        }
+        Compressor compressor = g_compressor;
+        int threshold = (region != null) ? g_thresholds.getOrDefault(region, g_threshold) : g_threshold;
+        byte id = UNCOMPRESSED;
+        byte[] data = bytes;
+        if (dictionary == null && compressor != null && length >= threshold) {
+            byte[] compressed = compressor.compress(bytes, offset, length);
+            if (compressed.length < length) {
+                id = compressor.id();
+                data = compressed;
+                offset = 0;
+                length = compressed.length;
+            }
+        }
+        byte[] result = new byte[length + 1];
+        result[0] = id;
+        System.arraycopy(data, offset, result, 1, length);
+        return result;
     }
 
     /**
@@ -81,6 +296,30 @@ public class SerializationUtils {
     public static Object deserialize(byte[] bytes) throws IOException {
         if (bytes == null || bytes.length == 0)
             return null;
-        return g_serializer.deserialize(bytes);
+        //未压缩的数据跳过压缩算法标识直接反序列化，不需要复制
+        if (g_header && bytes[0] == UNCOMPRESSED)
+            return g_serializer.deserialize(ByteBuffer.wrap(bytes, 1, bytes.length - 1));
+        return g_serializer.deserialize(decompress(bytes));
+    }
+
+    /**
+     * 去掉压缩算法标识并解压，返回序列化器生成的原始数据
+     * @param bytes {@link #serialize(Object, String)} 返回的字节数组
+     * @return 序列化器生成的数据
+     * @throws IOException io exception
+     */
+    public static byte[] decompress(byte[] bytes) throws IOException {
+        if (!g_header || bytes == null || bytes.length == 0)
+            return bytes;
+        byte id = bytes[0];
+        if (id == UNCOMPRESSED)
+            return Arrays.copyOfRange(bytes, 1, bytes.length);
+        if (id == DICTIONARY)
+            return ZstdDictionaries.Dictionary.decompress(bytes, 1, bytes.length - 1);
+        //没有压缩算法标识的旧数据等无法识别的数据
+        Compressor compressor = (id > 0 && id < g_compressors.length) ? g_compressors[id] : null;
+        if (compressor == null)
+            throw new IOException("Unknown compressor id: " + id);
+        return compressor.decompress(bytes, 1, bytes.length - 1);
     }
 }
@@ -16,7 +16,9 @@
 package net.oschina.j2cache.util;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
 /**
  * 对象序列化接口
@@ -46,5 +48,29 @@ public interface Serializer {
 	 * @throws IOException io exception
 	 */
 	Object deserialize(byte[] bytes) throws IOException ;
+
+	/**
+	 * 对象序列化到输出流，用于写入可重用的缓冲区（见 {@link PooledOutputStream}），避免每次分配新的字节数组
+	 * 实现不能关闭输出流，缺省实现先序列化到字节数组再写入输出流
+	 * @param obj  待序列化的对象
+	 * @param out  输出流
+	 * @throws IOException io exception
+	 */
+	default void serialize(Object obj, OutputStream out) throws IOException {
+		out.write(serialize(obj));
+	}
+
+	/**
+	 * 从 ByteBuffer 的 position 到 limit 之间的数据反序列化，不需要先复制到单独的字节数组
+	 * 缺省实现先复制到字节数组
+	 * @param buffer  反序列化的数据
+	 * @return 返回序列化对象
+	 * @throws IOException io exception
+	 */
+	default Object deserialize(ByteBuffer buffer) throws IOException {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return deserialize(bytes);
+	}
 	
 }
@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache.util;
+
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 使用 snappy 压缩，速度快，压缩率较低
+ *
+ * @author Winter Lau(javayou@gmail.com)
+ */
+public class SnappyCompressor implements Compressor {
+
+    @Override
+    public String name() {
+        return "snappy";
+    }
+
+    @Override
+    public byte id() {
+        return 1;
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes) throws IOException {
+        return Snappy.compress(bytes);
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes, int offset, int length) throws IOException {
+        byte[] result = new byte[Snappy.maxCompressedLength(length)];
+        int n = Snappy.compress(bytes, offset, length, result, 0);
+        return Arrays.copyOf(result, n);
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes, int offset, int length) throws IOException {
+        byte[] result = new byte[Snappy.uncompressedLength(bytes, offset, length)];
+        Snappy.uncompress(bytes, offset, length, result, 0);
+        return result;
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache.util;
+
+import com.github.luben.zstd.Zstd;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 使用 zstd 压缩，压缩率高，速度略低于 snappy
+ *
+ * @author Winter Lau(javayou@gmail.com)
+ */
+public class ZstdCompressor implements Compressor {
+
+    private final static int DEFAULT_LEVEL = 3;
+
+    private final int level;
+
+    public ZstdCompressor() {
+        this(DEFAULT_LEVEL);
+    }
+
+    /**
+     * @param level 压缩级别 1~22，级别越高压缩率越高、速度越慢
+     */
+    public ZstdCompressor(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public String name() {
+        return "zstd";
+    }
+
+    @Override
+    public byte id() {
+        return 2;
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes) throws IOException {
+        return Zstd.compress(bytes, level);
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes, int offset, int length) throws IOException {
+        byte[] result = new byte[(int) Zstd.compressBound(length)];
+        long n = Zstd.compressByteArray(result, 0, result.length, bytes, offset, length, level);
+        if (Zstd.isError(n))
+            throw new IOException("Failed to compress zstd data: " + Zstd.getErrorName(n));
+        return Arrays.copyOf(result, (int) n);
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes, int offset, int length) throws IOException {
+        long size = Zstd.getFrameContentSize(bytes, offset, length);
+        if (size < 0 || size > Integer.MAX_VALUE)
+            throw new IOException("Illegal zstd frame, content size: " + size);
+        byte[] result = new byte[(int)size];
+        long n = Zstd.decompressByteArray(result, 0, result.length, bytes, offset, length);
+        if (Zstd.isError(n))
+            throw new IOException("Failed to decompress zstd data: " + Zstd.getErrorName(n));
+        return result;
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2015-2017, Winter Lau (javayou@gmail.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oschina.j2cache.util;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import net.oschina.j2cache.CacheException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * 按缓存区域训练的 zstd 字典，适用于结构相同的小对象，通用压缩算法对这类数据几乎没有效果
+ * 字典由二级缓存的实现负责训练和共享（见 redis.zstd_dict.[region]），每个字典有全局唯一的版本号，
+ * 压缩数据中记录了字典的版本号，本节点没有的字典通过 {@link #enable(IntFunction)} 注册的加载器读取
+ *
+ * @author Winter Lau(javayou@gmail.com)
+ */
+public class ZstdDictionaries {
+
+    private final static Logger log = LoggerFactory.getLogger(ZstdDictionaries.class);
+
+    private final static int LEVEL = 3;
+
+    //各区域当前用于压缩的字典
+    private final static ConcurrentHashMap<String, Dictionary> currents = new ConcurrentHashMap<>();
+    //所有已加载的字典，用于解压
+    private final static ConcurrentHashMap<Integer, Dictionary> versions = new ConcurrentHashMap<>();
+    private static volatile IntFunction<byte[]> loader;
+
+    /**
+     * 启用字典压缩，所有缓存数据都将写入一个字节的压缩算法标识（见 {@link SerializationUtils}）
+     * @param dictLoader 按版本号读取字典数据，不存在时返回 null
+     */
+    public static void enable(IntFunction<byte[]> dictLoader) {
+        loader = dictLoader;
+        SerializationUtils.enableHeader();
+    }
+
+    /**
+     * 将字典设置为缓存区域当前使用的字典
+     * @param region 缓存区域的名称
+     * @param version 字典的版本号
+     * @param dict 字典数据
+     */
+    public static void install(String region, int version, byte[] dict) {
+        Dictionary dictionary = versions.computeIfAbsent(version, v -> new Dictionary(v, dict));
+        Dictionary old = currents.put(region, dictionary);
+        if (old == null || old.version != version)
+            log.info(String.format("Using zstd dictionary [%s] version %d, %d bytes", region, version, dict.length));
+    }
+
+    /**
+     * 缓存区域当前使用的字典版本号
+     * @param region 缓存区域的名称
+     * @return version of the dictionary, 0 if the region has no dictionary
+     */
+    public static int version(String region) {
+        Dictionary dictionary = currents.get(region);
+        return (dictionary != null) ? dictionary.version : 0;
+    }
+
+    /**
+     * 使用样本数据训练字典
+     * @param samples 序列化后的样本数据
+     * @param dictSize 字典的最大字节数
+     * @return 字典数据，样本不足时返回 null
+     */
+    public static byte[] train(List<byte[]> samples, int dictSize) {
+        byte[] dict = new byte[dictSize];
+        long size = Zstd.trainFromBuffer(samples.toArray(new byte[samples.size()][]), dict);
+        if (Zstd.isError(size)) {
+            log.warn("Failed to train zstd dictionary with " + samples.size() + " samples: " + Zstd.getErrorName(size));
+            return null;
+        }
+        return Arrays.copyOf(dict, (int) size);
+    }
+
+    static Dictionary current(String region) {
+        return (region != null && !currents.isEmpty()) ? currents.get(region) : null;
+    }
+
+    static Dictionary get(int version) throws IOException {
+        Dictionary dictionary = versions.get(version);
+        if (dictionary == null) {
+            IntFunction<byte[]> loader = ZstdDictionaries.loader;
+            byte[] dict = (loader != null) ? loader.apply(version) : null;
+            if (dict == null)
+                throw new IOException("Zstd dictionary not found, version: " + version);
+            dictionary = versions.computeIfAbsent(version, v -> new Dictionary(v, dict));
+        }
+        return dictionary;
+    }
+
+    /**
+     * 一个版本的字典，压缩数据格式为: [4 字节版本号][zstd 数据]
+     */
+    static class Dictionary {
+
+        private final int version;
+        private final ZstdDictCompress compressor;
+        private final ZstdDictDecompress decompressor;
+
+        Dictionary(int version, byte[] dict) {
+            if (version <= 0)
+                throw new CacheException("Illegal zstd dictionary version: " + version);
+            this.version = version;
+            this.compressor = new ZstdDictCompress(dict, LEVEL);
+            this.decompressor = new ZstdDictDecompress(dict);
+        }
+
+        /**
+         * 压缩数据，结果的前 offset 个字节留给调用者写入压缩算法标识
+         */
+        byte[] compress(byte[] bytes, int srcOffset, int length, int offset) throws IOException {
+            byte[] result = new byte[offset + 4 + (int) Zstd.compressBound(length)];
+            long n = Zstd.compressFastDict(result, offset + 4, bytes, srcOffset, length, compressor);
+            if (Zstd.isError(n))
+                throw new IOException("Failed to compress with zstd dictionary: " + Zstd.getErrorName(n));
+            result[offset] = (byte) (version >>> 24);
+            result[offset + 1] = (byte) (version >>> 16);
+            result[offset + 2] = (byte) (version >>> 8);
+            result[offset + 3] = (byte) version;
+            return Arrays.copyOf(result, offset + 4 + (int) n);
+        }
+
+        static byte[] decompress(byte[] bytes, int offset, int length) throws IOException {
+            if (length < 4)
+                throw new IOException("Illegal zstd dictionary data");
+            int version = ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16)
+                    | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+            Dictionary dictionary = get(version);
+            long size = Zstd.getFrameContentSize(bytes, offset + 4, length - 4);
+            if (size < 0 || size > Integer.MAX_VALUE)
+                throw new IOException("Illegal zstd frame, content size: " + size);
+            byte[] result = new byte[(int) size];
+            long n = Zstd.decompressFastDict(result, 0, bytes, offset + 4, length - 4, dictionary.decompressor);
+            if (Zstd.isError(n))
+                throw new IOException("Failed to decompress with zstd dictionary: " + Zstd.getErrorName(n));
+            return result;
+        }
+    }
+}
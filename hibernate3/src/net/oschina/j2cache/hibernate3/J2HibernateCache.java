@@ -16,7 +16,6 @@
 package net.oschina.j2cache.hibernate3;
 
 import net.oschina.j2cache.CacheChannel;
-import net.oschina.j2cache.CacheObject;
 import org.hibernate.cache.Cache;
 import org.hibernate.cache.CacheException;
 import org.hibernate.cache.Timestamper;
@@ -57,10 +56,10 @@ public class J2HibernateCache implements Cache {
     
     @Override
     public Object get(Object key) throws CacheException {
-        CacheObject cobj = cache.get(region, (String)key);
+        Object value = cache.getValue(region, (String)key);
         if (log.isDebugEnabled())
-            log.debug("get value for j2cache which key:" + key + ",value:" + cobj.getValue());
-        return cobj.getValue();
+            log.debug("get value for j2cache which key:" + key + ",value:" + value);
+        return value;
     }
 
     @Override
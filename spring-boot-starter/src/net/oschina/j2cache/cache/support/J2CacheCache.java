@@ -7,7 +7,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cache.support.AbstractValueAdaptingCache;
 import net.oschina.j2cache.CacheChannel;
-import net.oschina.j2cache.CacheObject;
 import net.oschina.j2cache.J2Cache;
 
 /**
@@ -83,15 +82,7 @@ public class J2CacheCache extends AbstractValueAdaptingCache {
 
 	@Override
 	protected Object lookup(Object key) {
-		CacheObject cacheObject = cacheChannel.get(j2CacheName, String.valueOf(key));
-		return getValueByCacheObject(cacheObject);
-	}
-
-	private Object getValueByCacheObject(CacheObject cacheObject) {
-		if (cacheObject != null) {
-			return cacheObject.getValue();
-		}
-		return null;
+		return cacheChannel.getValue(j2CacheName, String.valueOf(key));
 	}
 
 }